@@ -0,0 +1,157 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Features that started failing, were fixed or kept failing since the previous build, matched by uri (or name when
+ * the report has no uris), and features that became slower than in recent builds.
+ */
+public class CucumberDelta {
+
+    public static final int DEFAULT_SLOWDOWN_PERCENT = 50;
+    public static final int SLOWDOWN_BUILDS = 5;
+
+    // durations are bucketed, so a slowdown below a second is mostly noise
+    private static final long MIN_SLOWDOWN_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int SLOWEST_LISTED = 5;
+
+    private final List<String> newlyFailing = new ArrayList<>();
+    private final List<String> fixed = new ArrayList<>();
+    private final List<String> stillFailing = new ArrayList<>();
+    private final List<String> slower = new ArrayList<>();
+    private final List<String> slowest = new ArrayList<>();
+
+    /**
+     * A feature is only listed as fixed if it is in the current result and all its scenarios passed. One that is
+     * missing, because it was deleted or its report was not written, is not listed at all.
+     *
+     * @param previous the result of the previous build, null if there is none
+     * @param current  the result with all features, not only the failed ones
+     */
+    public static CucumberDelta between(CucumberResult previous, CucumberResult current) {
+        final CucumberDelta delta = new CucumberDelta();
+        final Set<String> previouslyFailing = new HashSet<>();
+        if (previous != null) {
+            for (FeatureResult feature : previous.getFeatureResults()) {
+                if (feature.getPassPercentage() != 100) {
+                    previouslyFailing.add(key(feature));
+                }
+            }
+        }
+        for (FeatureResult feature : current.getFeatureResults()) {
+            final boolean failedBefore = previouslyFailing.contains(key(feature));
+            if (feature.getPassPercentage() == 100) {
+                if (failedBefore) {
+                    delta.fixed.add(displayName(feature));
+                }
+            } else if (failedBefore) {
+                delta.stillFailing.add(displayName(feature));
+            } else if (previous != null) {
+                delta.newlyFailing.add(displayName(feature));
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * Flags features whose 95th percentile scenario duration grew by more than the threshold compared with the
+     * same features over recent builds, and lists the slowest scenarios when any did.
+     *
+     * @param recent results of recent builds, their durations are combined into the baseline
+     */
+    public CucumberDelta withSlowdowns(List<CucumberResult> recent, CucumberResult current, int thresholdPercent) {
+        final Map<String, DurationHistogram> baseline = new HashMap<>();
+        for (CucumberResult result : recent) {
+            for (FeatureResult feature : result.getFeatureResults()) {
+                if (feature.getDurations() != null) {
+                    baseline.computeIfAbsent(key(feature), k -> new DurationHistogram()).merge(feature.getDurations());
+                }
+            }
+        }
+        for (FeatureResult feature : current.getFeatureResults()) {
+            final DurationHistogram before = baseline.get(key(feature));
+            if (feature.getDurations() == null || before == null) {
+                continue;
+            }
+            final long was = before.percentileNanos(0.95);
+            final long now = feature.getDurations().percentileNanos(0.95);
+            if (now >= MIN_SLOWDOWN_NANOS && now * 100 > was * (100L + thresholdPercent)) {
+                slower.add(displayName(feature) + ": p95 " + DurationHistogram.format(was) + " \u2192 " + DurationHistogram.format(now));
+            }
+        }
+        if (!slower.isEmpty()) {
+            for (ScenarioTiming timing : current.getSlowestScenarios()) {
+                if (slowest.size() == SLOWEST_LISTED) {
+                    break;
+                }
+                slowest.add(timing.getScenario() + " (" + timing.getFeature() + "): " + DurationHistogram.format(timing.getNanos()));
+            }
+        }
+        return this;
+    }
+
+    private static String key(FeatureResult feature) {
+        return feature.getUri() != null ? feature.getUri() : feature.getDisplayName();
+    }
+
+    private static String displayName(FeatureResult feature) {
+        return feature.getDisplayName() != null ? feature.getDisplayName() : feature.getUri();
+    }
+
+    public List<String> getNewlyFailing() {
+        return Collections.unmodifiableList(newlyFailing);
+    }
+
+    public List<String> getFixed() {
+        return Collections.unmodifiableList(fixed);
+    }
+
+    public List<String> getStillFailing() {
+        return Collections.unmodifiableList(stillFailing);
+    }
+
+    public List<String> getSlower() {
+        return Collections.unmodifiableList(slower);
+    }
+
+    public boolean isEmpty() {
+        return newlyFailing.isEmpty() && fixed.isEmpty() && stillFailing.isEmpty() && slower.isEmpty();
+    }
+
+    /**
+     * @param maxNames features listed per change, the rest are counted
+     */
+    void writeFields(JsonWriter json, int maxNames) throws IOException {
+        writeField(json, "Newly failing", newlyFailing, maxNames);
+        writeField(json, "Fixed", fixed, maxNames);
+        writeField(json, "Still failing", stillFailing, maxNames);
+        writeField(json, "Slower", slower, maxNames);
+        writeField(json, "Slowest scenarios", slowest, maxNames);
+    }
+
+    private static void writeField(JsonWriter json, String title, List<String> features, int maxNames) throws IOException {
+        if (features.isEmpty()) {
+            return;
+        }
+        final List<String> listed = features.size() > maxNames ? features.subList(0, maxNames) : features;
+        String value = String.join("\n", listed);
+        if (listed.size() < features.size()) {
+            value = (listed.isEmpty() ? "" : value + "\n") + "\u2026and " + (features.size() - listed.size()) + " more";
+        }
+        json.beginObject();
+        json.name("title").value(title + " (" + features.size() + ")");
+        json.name("value").value(value);
+        json.name("short").value(false);
+        json.endObject();
+    }
+}
@@ -0,0 +1,92 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+/**
+ * A single slack message summarising several builds, one line per build or branch.
+ */
+public class CucumberDigest {
+
+    private final String title;
+    private final List<Entry> entries;
+
+    public CucumberDigest(String title, List<Entry> entries) {
+        this.title = title;
+        this.entries = entries;
+    }
+
+    public int getTotalScenarios() {
+        int total = 0;
+        for (Entry entry : entries) {
+            total = total + entry.getResult().getTotalScenarios();
+        }
+        return total;
+    }
+
+    /**
+     * @return pass percentage over all builds, weighted by the number of scenarios each build ran
+     */
+    public int getPassPercentage() {
+        long total = 0;
+        long passed = 0;
+        for (Entry entry : entries) {
+            total = total + entry.getResult().getTotalScenarios();
+            passed = passed + (long) entry.getResult().getTotalScenarios() * entry.getResult().getPassPercentage();
+        }
+        return total == 0 ? 100 : (int) (passed / total);
+    }
+
+    public String toSlackMessage() {
+        final StringWriter message = new StringWriter();
+        try (JsonWriter json = new JsonWriter(message)) {
+            SlackMessageLayout.begin(json, title + ": " + entries.size() + " builds, Scenarios: " + getTotalScenarios(), getPassPercentage());
+            SlackMessageLayout.titles(json, "Builds", "Pass %");
+            for (Entry entry : entries) {
+                SlackMessageLayout.row(json, "<" + entry.getUrl() + "|" + entry.getLabel() + ">",
+                        SlackMessageLayout.percentage(entry.getResult().getPassPercentage()));
+            }
+            SlackMessageLayout.total(json, "Combined", getPassPercentage());
+            SlackMessageLayout.end(json, getPassPercentage(), title);
+        } catch (IOException e) {
+            throw new IllegalStateException("StringWriter does not throw", e);
+        }
+        return message.toString();
+    }
+
+    /**
+     * One build's contribution to a digest, together with the message it would have sent on its own.
+     */
+    public static class Entry {
+        private final String label;
+        private final String url;
+        private final CucumberResult result;
+        private final String message;
+
+        public Entry(String label, String url, CucumberResult result, String message) {
+            this.label = label;
+            this.url = url;
+            this.result = result;
+            this.message = message;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public CucumberResult getResult() {
+            return result;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
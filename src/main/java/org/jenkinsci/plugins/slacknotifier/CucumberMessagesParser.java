@@ -0,0 +1,447 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Token streaming parser for Cucumber Messages, the NDJSON stream of envelopes modern cucumber versions write.
+ * <p>
+ * Envelopes are read one after the other and only those needed to count scenarios are looked into: the gherkin
+ * documents for feature names and scenario lines, pickles and test cases to find the scenario a test case runs, and
+ * the step and test case results. Everything else, attachments in particular, is skipped without being
+ * materialised. A test case is only kept while it runs, so memory does not grow with the length of the stream.
+ * <p>
+ * A scenario retried by cucumber counts once, with the outcome of its last attempt.
+ */
+class CucumberMessagesParser {
+
+    private final boolean trackScenarios;
+
+    // uri -> feature, in the order their first scenario started
+    private final Map<String, FeatureTally> features = new LinkedHashMap<>();
+    // uri -> feature name
+    private final Map<String, String> featureNames = new HashMap<>();
+    // gherkin scenario or examples row id -> line, until the pickle for it has been read
+    private final Map<String, String> lines = new HashMap<>();
+    private final Map<String, Pickle> pickles = new HashMap<>();
+    // test case id -> pickle id
+    private final Map<String, String> testCases = new HashMap<>();
+    // test case started id -> attempt that is running
+    private final Map<String, Attempt> running = new HashMap<>();
+
+    /**
+     * @param trackScenarios keep the outcome of every scenario so features from several reports can be
+     *                       merged with {@link FeatureTally#merge(FeatureTally)}
+     */
+    CucumberMessagesParser(boolean trackScenarios) {
+        this.trackScenarios = trackScenarios;
+    }
+
+    /**
+     * @param reader positioned at the first envelope, it is made lenient to read one envelope after another
+     */
+    List<FeatureTally> readFeatures(JsonReader reader) throws IOException {
+        reader.setLenient(true);
+        while (reader.peek() != JsonToken.END_DOCUMENT) {
+            readEnvelope(reader);
+        }
+        return new ArrayList<>(features.values());
+    }
+
+    private void readEnvelope(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "gherkinDocument":
+                    readGherkinDocument(reader);
+                    break;
+                case "pickle":
+                    readPickle(reader);
+                    break;
+                case "testCase":
+                    readTestCase(reader);
+                    break;
+                case "testCaseStarted":
+                    readTestCaseStarted(reader);
+                    break;
+                case "testStepFinished":
+                    readTestStepFinished(reader);
+                    break;
+                case "testCaseFinished":
+                    readTestCaseFinished(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private void readGherkinDocument(JsonReader reader) throws IOException {
+        String uri = null;
+        String name = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "uri":
+                    uri = nextStringOrNull(reader);
+                    break;
+                case "feature":
+                    name = readFeature(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (uri != null && name != null) {
+            featureNames.put(uri, name);
+        }
+    }
+
+    private String readFeature(JsonReader reader) throws IOException {
+        if (skipIfNull(reader)) {
+            return null;
+        }
+        String name = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "name":
+                    name = nextStringOrNull(reader);
+                    break;
+                case "children":
+                    readChildren(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return name;
+    }
+
+    /**
+     * Reads the scenarios of a feature or rule, rules nest the same way.
+     */
+    private void readChildren(JsonReader reader) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                final String name = reader.nextName();
+                if (name.equals("scenario")) {
+                    readNode(reader);
+                } else if (name.equals("rule") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (reader.nextName().equals("children")) {
+                            readChildren(reader);
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+    }
+
+    /**
+     * Records the line of a scenario, and of the rows of its examples if it is an outline.
+     */
+    private void readNode(JsonReader reader) throws IOException {
+        String id = null;
+        String line = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    id = nextStringOrNull(reader);
+                    break;
+                case "location":
+                    line = readLine(reader);
+                    break;
+                case "examples":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            if (reader.nextName().equals("tableBody")) {
+                                reader.beginArray();
+                                while (reader.hasNext()) {
+                                    readNode(reader);
+                                }
+                                reader.endArray();
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (id != null && line != null) {
+            lines.put(id, line);
+        }
+    }
+
+    private static String readLine(JsonReader reader) throws IOException {
+        String line = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("line")) {
+                line = nextStringOrNull(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return line;
+    }
+
+    private void readPickle(JsonReader reader) throws IOException {
+        String id = null;
+        String uri = null;
+        String name = null;
+        String astNodeId = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    id = nextStringOrNull(reader);
+                    break;
+                case "uri":
+                    uri = nextStringOrNull(reader);
+                    break;
+                case "name":
+                    name = nextStringOrNull(reader);
+                    break;
+                case "astNodeIds":
+                    // the scenario, followed by the examples row for a scenario outline
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        astNodeId = nextStringOrNull(reader);
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (id != null) {
+            // ids differ from run to run, the line identifies the same scenario in a rerun
+            final String line = astNodeId != null ? lines.remove(astNodeId) : null;
+            pickles.put(id, new Pickle(uri, name, line != null ? uri + ":" + line : id));
+        }
+    }
+
+    private void readTestCase(JsonReader reader) throws IOException {
+        String id = null;
+        String pickleId = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    id = nextStringOrNull(reader);
+                    break;
+                case "pickleId":
+                    pickleId = nextStringOrNull(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (id != null && pickleId != null) {
+            testCases.put(id, pickleId);
+        }
+    }
+
+    private void readTestCaseStarted(JsonReader reader) throws IOException {
+        String id = null;
+        String testCaseId = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    id = nextStringOrNull(reader);
+                    break;
+                case "testCaseId":
+                    testCaseId = nextStringOrNull(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (id != null && testCaseId != null) {
+            running.put(id, new Attempt(testCaseId));
+            final Pickle pickle = pickles.get(testCases.get(testCaseId));
+            if (pickle != null) {
+                getFeature(pickle.uri);
+            }
+        }
+    }
+
+    private void readTestStepFinished(JsonReader reader) throws IOException {
+        Attempt attempt = null;
+        String status = null;
+        long nanos = -1;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if (name.equals("testCaseStartedId")) {
+                attempt = running.get(nextStringOrNull(reader));
+            } else if (name.equals("testStepResult") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "status":
+                            status = nextStringOrNull(reader);
+                            break;
+                        case "duration":
+                            nanos = readDuration(reader);
+                            break;
+                        default:
+                            reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (attempt != null) {
+            attempt.failed = attempt.failed || !"PASSED".equals(status);
+            if (nanos >= 0) {
+                attempt.nanos = attempt.nanos + nanos;
+                attempt.timed = true;
+            }
+        }
+    }
+
+    private static long readDuration(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return -1;
+        }
+        long seconds = 0;
+        long nanos = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "seconds":
+                    seconds = reader.nextLong();
+                    break;
+                case "nanos":
+                    nanos = reader.nextLong();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return seconds * 1_000_000_000L + nanos;
+    }
+
+    private void readTestCaseFinished(JsonReader reader) throws IOException {
+        String id = null;
+        boolean willBeRetried = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "testCaseStartedId":
+                    id = nextStringOrNull(reader);
+                    break;
+                case "willBeRetried":
+                    willBeRetried = reader.nextBoolean();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        final Attempt attempt = running.remove(id);
+        if (attempt == null || willBeRetried) {
+            return;
+        }
+        final String pickleId = testCases.remove(attempt.testCaseId);
+        final Pickle pickle = pickles.remove(pickleId);
+        if (pickle == null) {
+            return;
+        }
+        getFeature(pickle.uri).addElement(pickle.key, pickle.name, true, attempt.failed, attempt.timed ? attempt.nanos : -1);
+    }
+
+    private FeatureTally getFeature(String uri) {
+        return features.computeIfAbsent(uri, key -> {
+            final FeatureTally feature = new FeatureTally();
+            if (trackScenarios) {
+                feature.trackOutcomes();
+            }
+            feature.setUri(key);
+            feature.setName(featureNames.get(key));
+            return feature;
+        });
+    }
+
+    private static String nextStringOrNull(JsonReader reader) throws IOException {
+        if (skipIfNull(reader)) {
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    private static boolean skipIfNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return true;
+        }
+        return false;
+    }
+
+    private static final class Pickle {
+        private final String uri;
+        private final String name;
+        private final String key;
+
+        private Pickle(String uri, String name, String key) {
+            this.uri = uri;
+            this.name = name;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Outcome and duration of the steps of a test case attempt so far.
+     */
+    private static final class Attempt {
+        private final String testCaseId;
+        private boolean failed;
+        private boolean timed;
+        private long nanos;
+
+        private Attempt(String testCaseId) {
+            this.testCaseId = testCaseId;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import com.google.gson.stream.JsonReader;
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+import io.airlift.compress.zstd.ZstdInputStream;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Parses the cucumber report(s) matching a path or Ant glob where they live, so only the {@link CucumberResult}
+ * summary travels back over the remoting channel instead of the raw reports.
+ * <p>
+ * When a glob matches several files they are parsed in parallel and features that appear in more than one file
+ * (reruns) are merged by uri rather than counted twice. Reports may be cucumber JSON or Cucumber Messages NDJSON,
+ * told apart by their first token, and may be gzip or zstd compressed.
+ */
+class CucumberReportCallable extends MasterToSlaveFileCallable<CucumberResult> {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] GZIP_MAGIC = {(byte) 0x1f, (byte) 0x8b};
+    private static final byte[] ZSTD_MAGIC = {(byte) 0x28, (byte) 0xb5, (byte) 0x2f, (byte) 0xfd};
+
+    private final String json;
+    private final boolean hideSuccessfulResults;
+
+    CucumberReportCallable(String json, boolean hideSuccessfulResults) {
+        this.json = json;
+        this.hideSuccessfulResults = hideSuccessfulResults;
+    }
+
+    static boolean isGlob(String json) {
+        return json.indexOf('*') >= 0 || json.indexOf('?') >= 0;
+    }
+
+    /**
+     * Opens a report, decompressing gzip or zstd while it is read when the file starts with their magic bytes, so a
+     * compressed report is never inflated in memory or on disk.
+     */
+    static InputStream openReport(File report) throws IOException {
+        final InputStream stream = new BufferedInputStream(Files.newInputStream(report.toPath()), BUFFER_SIZE);
+        try {
+            stream.mark(ZSTD_MAGIC.length);
+            final byte[] magic = new byte[ZSTD_MAGIC.length];
+            int read = 0;
+            // a plain read loop, agents may still run on Java 8
+            while (read < magic.length) {
+                final int n = stream.read(magic, read, magic.length - read);
+                if (n < 0) {
+                    break;
+                }
+                read = read + n;
+            }
+            stream.reset();
+            if (startsWith(magic, read, GZIP_MAGIC)) {
+                return new GZIPInputStream(stream, BUFFER_SIZE);
+            }
+            if (startsWith(magic, read, ZSTD_MAGIC)) {
+                return new ZstdInputStream(stream);
+            }
+            return stream;
+        } catch (IOException | RuntimeException e) {
+            stream.close();
+            throw e;
+        }
+    }
+
+    private static boolean startsWith(byte[] bytes, int length, byte[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public CucumberResult invoke(File workspace, VirtualChannel channel) throws IOException, InterruptedException {
+        if (!isGlob(json)) {
+            final File report = new File(workspace, json);
+            try (InputStream stream = openReport(report)) {
+                final CucumberResult result = new CucumberReportParser(hideSuccessfulResults).parse(stream);
+                result.setReportBytes(report.length());
+                return result;
+            }
+        }
+
+        final String[] reports = Util.createFileSet(workspace, json).getDirectoryScanner().getIncludedFiles();
+        if (reports.length == 0) {
+            throw new IOException("No cucumber reports match '" + json + "' in " + workspace);
+        }
+        Arrays.sort(reports);
+
+        final CucumberReportParser parser = new CucumberReportParser(hideSuccessfulResults, true);
+        final Map<String, FeatureTally> features = new LinkedHashMap<>();
+        for (List<FeatureTally> parsed : parseAll(parser, workspace, reports)) {
+            for (FeatureTally feature : parsed) {
+                final FeatureTally existing = features.putIfAbsent(feature.getKey(), feature);
+                if (existing != null) {
+                    existing.merge(feature);
+                }
+            }
+        }
+        final CucumberResult result = parser.toResult(features.values());
+        long bytes = 0;
+        for (String report : reports) {
+            bytes = bytes + new File(workspace, report).length();
+        }
+        result.setReportBytes(bytes);
+        return result;
+    }
+
+    private List<List<FeatureTally>> parseAll(final CucumberReportParser parser, final File workspace, final String[] reports)
+            throws IOException, InterruptedException {
+        final List<Callable<List<FeatureTally>>> tasks = new ArrayList<>();
+        for (final String report : reports) {
+            tasks.add(() -> {
+                try (JsonReader reader = new JsonReader(new InputStreamReader(
+                        openReport(new File(workspace, report)), StandardCharsets.UTF_8))) {
+                    return parser.readReport(reader);
+                }
+            });
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(Math.min(reports.length, Runtime.getRuntime().availableProcessors()));
+        try {
+            final List<List<FeatureTally>> results = new ArrayList<>();
+            for (Future<List<FeatureTally>> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Exception occurred while parsing test results", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
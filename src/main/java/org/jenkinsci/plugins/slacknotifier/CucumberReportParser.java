@@ -0,0 +1,263 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Token streaming parser for cucumber JSON reports.
+ * <p>
+ * Only the fields needed for a {@link CucumberResult} are read, everything else (embeddings, output,
+ * doc strings, hooks, ...) is skipped without being materialised, so memory is bounded by the number of
+ * features in the report rather than by its size on disk.
+ * <p>
+ * Step durations are added up per scenario and per feature in the same pass, into a fixed bucket histogram per
+ * feature and the slowest scenarios of the report.
+ * <p>
+ * Cucumber Messages NDJSON streams are recognised by their first token, an object rather than an array, and read by
+ * {@link CucumberMessagesParser} into the same result.
+ */
+public class CucumberReportParser {
+
+    private final boolean hideSuccessfulResults;
+    private final boolean trackScenarios;
+
+    public CucumberReportParser(boolean hideSuccessfulResults) {
+        this(hideSuccessfulResults, false);
+    }
+
+    /**
+     * @param trackScenarios keep the outcome of every scenario so features from several reports can be
+     *                       merged with {@link FeatureTally#merge(FeatureTally)}
+     */
+    CucumberReportParser(boolean hideSuccessfulResults, boolean trackScenarios) {
+        this.hideSuccessfulResults = hideSuccessfulResults;
+        this.trackScenarios = trackScenarios;
+    }
+
+    public CucumberResult parse(InputStream stream) throws IOException {
+        return parse(new InputStreamReader(stream, StandardCharsets.UTF_8));
+    }
+
+    public CucumberResult parse(Reader reader) throws IOException {
+        try (JsonReader jsonReader = new JsonReader(reader)) {
+            return parse(jsonReader);
+        }
+    }
+
+    public CucumberResult parse(JsonReader reader) throws IOException {
+        return toResult(readReport(reader));
+    }
+
+    /**
+     * Reads the features of a JSON report or of a Cucumber Messages stream, whichever the reader is positioned at.
+     */
+    List<FeatureTally> readReport(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+            return new CucumberMessagesParser(trackScenarios).readFeatures(reader);
+        }
+        return readFeatures(reader);
+    }
+
+    List<FeatureTally> readFeatures(JsonReader reader) throws IOException {
+        final List<FeatureTally> features = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            features.add(readFeature(reader));
+        }
+        reader.endArray();
+        return features;
+    }
+
+    CucumberResult toResult(Collection<FeatureTally> features) {
+        int totalScenarios = 0;
+        int failedScenarios = 0;
+        final FeatureTable.Builder results = new FeatureTable.Builder(hideSuccessfulResults ? 16 : features.size());
+        // fastest at the head, so it is the one dropped when there are too many
+        final PriorityQueue<ScenarioTiming> slowest = new PriorityQueue<>(FeatureTally.SLOWEST_SCENARIOS + 1, ScenarioTiming.FASTEST_FIRST);
+        for (FeatureTally feature : features) {
+            totalScenarios = totalScenarios + feature.getScenarios();
+            failedScenarios = failedScenarios + feature.getFailed();
+            if (feature.getPassPercentage() != 100 || !hideSuccessfulResults) {
+                feature.addTo(results);
+            }
+            for (ScenarioTiming timing : feature.getSlowest()) {
+                slowest.add(timing);
+                if (slowest.size() > FeatureTally.SLOWEST_SCENARIOS) {
+                    slowest.poll();
+                }
+            }
+        }
+        final CucumberResult result = new CucumberResult(results.build(), totalScenarios, FeatureTally.percentage(totalScenarios, failedScenarios));
+        final List<ScenarioTiming> slowestFirst = new ArrayList<>(slowest);
+        slowestFirst.sort(ScenarioTiming.FASTEST_FIRST.reversed());
+        result.setSlowestScenarios(slowestFirst);
+        return result;
+    }
+
+    FeatureTally readFeature(JsonReader reader) throws IOException {
+        final FeatureTally feature = new FeatureTally();
+        if (trackScenarios) {
+            feature.trackOutcomes();
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "uri":
+                    feature.setUri(nextStringOrNull(reader));
+                    break;
+                case "name":
+                    feature.setName(nextStringOrNull(reader));
+                    break;
+                case "elements":
+                    readElements(reader, feature);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return feature;
+    }
+
+    private void readElements(JsonReader reader, FeatureTally feature) throws IOException {
+        if (skipIfNull(reader)) {
+            return;
+        }
+        int index = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            readElement(reader, feature, index++);
+        }
+        reader.endArray();
+    }
+
+    /**
+     * Reads a scenario or background. Field order is not guaranteed, so the type and outcome are only
+     * applied to the feature once the whole element has been consumed.
+     */
+    private void readElement(JsonReader reader, FeatureTally feature, int index) throws IOException {
+        String id = null;
+        String line = null;
+        String name = null;
+        String type = null;
+        final StepTally steps = new StepTally();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    id = nextStringOrNull(reader);
+                    break;
+                case "line":
+                    line = nextStringOrNull(reader);
+                    break;
+                case "name":
+                    name = nextStringOrNull(reader);
+                    break;
+                case "type":
+                    type = nextStringOrNull(reader);
+                    break;
+                case "steps":
+                    readSteps(reader, steps);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        final boolean scenario = type == null || type.equalsIgnoreCase("scenario");
+        feature.addElement(scenarioKey(id, line, index), name, scenario, steps.failed, steps.timed ? steps.nanos : -1);
+    }
+
+    private static String scenarioKey(String id, String line, int index) {
+        if (id != null) {
+            return id;
+        }
+        return line != null ? "line:" + line : "#" + index;
+    }
+
+    /**
+     * Records whether any step did not pass and adds up the step durations.
+     */
+    private void readSteps(JsonReader reader, StepTally steps) throws IOException {
+        if (skipIfNull(reader)) {
+            return;
+        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+            readStep(reader, steps);
+        }
+        reader.endArray();
+    }
+
+    private void readStep(JsonReader reader, StepTally steps) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("result") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                readResult(reader, steps);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private void readResult(JsonReader reader, StepTally steps) throws IOException {
+        String status = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "status":
+                    status = nextStringOrNull(reader);
+                    break;
+                case "duration":
+                    if (reader.peek() == JsonToken.NUMBER) {
+                        // nanoseconds, written as a floating point number by some formatters
+                        steps.nanos = steps.nanos + (long) reader.nextDouble();
+                        steps.timed = true;
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        steps.failed = steps.failed || !"passed".equals(status);
+    }
+
+    private static String nextStringOrNull(JsonReader reader) throws IOException {
+        if (skipIfNull(reader)) {
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    private static boolean skipIfNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Outcome and duration of the steps of one scenario or background.
+     */
+    private static final class StepTally {
+        private boolean failed;
+        private boolean timed;
+        private long nanos;
+    }
+}
@@ -1,18 +1,30 @@
 package org.jenkinsci.plugins.slacknotifier;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
 import org.apache.commons.lang.StringUtils;
 
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
 
-public class CucumberResult {
-    private final List<FeatureResult> featureResults;
+public class CucumberResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final FeatureTable featureResults;
     private final int passPercentage;
     private final int totalScenarios;
+    private long reportBytes;
+    private List<ScenarioTiming> slowestScenarios;
 
     public CucumberResult(List<FeatureResult> featureResults, int totalScenarios, int passPercentage) {
-        this.featureResults = featureResults;
+        this.featureResults = FeatureTable.of(featureResults);
         this.totalScenarios = totalScenarios;
         this.passPercentage = passPercentage;
     }
@@ -29,34 +41,237 @@ public class CucumberResult {
         return this.totalScenarios;
     }
 
+    /**
+     * @return the features, each created when it is read, see {@link FeatureTable}
+     */
     public List<FeatureResult> getFeatureResults() {
         return this.featureResults;
     }
 
+    FeatureTable getFeatureTable() {
+        return this.featureResults;
+    }
+
+    /**
+     * @return size of the report(s) this result was parsed from, 0 if unknown
+     */
+    public long getReportBytes() {
+        return this.reportBytes;
+    }
+
+    void setReportBytes(long reportBytes) {
+        this.reportBytes = reportBytes;
+    }
+
+    /**
+     * @return the slowest scenarios of the report, slowest first, empty if the report has no durations
+     */
+    public List<ScenarioTiming> getSlowestScenarios() {
+        return this.slowestScenarios == null ? Collections.emptyList() : this.slowestScenarios;
+    }
+
+    void setSlowestScenarios(List<ScenarioTiming> slowestScenarios) {
+        this.slowestScenarios = slowestScenarios;
+    }
+
+    /**
+     * @return this result listing only the features with a failed scenario, the totals still count all of them
+     */
+    public CucumberResult withoutSuccessfulFeatures() {
+        final FeatureTable.Builder failed = new FeatureTable.Builder(16);
+        for (int i = 0; i < featureResults.size(); i++) {
+            if (featureResults.getPassPercentage(i) != 100) {
+                failed.add(featureResults.getUri(i), featureResults.getDisplayName(i), featureResults.getPassPercentage(i),
+                        featureResults.getDurationNanos(i), featureResults.getDurations(i));
+            }
+        }
+        final CucumberResult result = new CucumberResult(failed.build(), totalScenarios, passPercentage);
+        result.reportBytes = reportBytes;
+        result.slowestScenarios = slowestScenarios;
+        return result;
+    }
+
     public String toSlackMessage(final String jobName, final int buildNumber, final String jenkinsUrl, final String extra) {
-        final JsonObject json = new JsonObject();
-        json.addProperty("channel", "#");
-        addCaption(json, buildNumber, jobName, jenkinsUrl, extra);
-
-        final JsonArray attachmentsJson = new JsonArray();
-        JsonObject fields = new JsonObject();
-        fields.add("fields", getFields(jobName, buildNumber, jenkinsUrl));
-        attachmentsJson.add(fields);
-
-        if (getPassPercentage() == 100) {
-            addAttachmentColor(attachmentsJson, "good");
-            json.addProperty("icon_emoji", ":thumbsup:");
-        } else if (getPassPercentage() >= 98) {
-            addAttachmentColor(attachmentsJson, "warning");
-            json.addProperty("icon_emoji", ":hand:");
+        return toSlackMessage(jobName, buildNumber, jenkinsUrl, extra, null);
+    }
+
+    /**
+     * @param delta changes since the previous build, listed below the features, may be null
+     */
+    public String toSlackMessage(final String jobName, final int buildNumber, final String jenkinsUrl, final String extra,
+                                 final CucumberDelta delta) {
+        return toSlackMessage(jobName, buildNumber, jenkinsUrl, extra, delta, SlackMessageLimits.DEFAULT);
+    }
+
+    public String toSlackMessage(final String jobName, final int buildNumber, final String jenkinsUrl, final String extra,
+                                 final CucumberDelta delta, final SlackMessageLimits limits) {
+        final StringWriter message = new StringWriter();
+        try {
+            writeSlackMessage(message, jobName, buildNumber, jenkinsUrl, extra, delta, limits);
+        } catch (IOException e) {
+            throw new IllegalStateException("StringWriter does not throw", e);
+        }
+        return message.toString();
+    }
+
+    public void writeSlackMessage(final Writer out, final String jobName, final int buildNumber, final String jenkinsUrl,
+                                  final String extra, final CucumberDelta delta) throws IOException {
+        writeSlackMessage(out, jobName, buildNumber, jenkinsUrl, extra, delta, SlackMessageLimits.DEFAULT);
+    }
+
+    /**
+     * Streams the slack message to the writer without building it in memory first, e.g. straight into a request
+     * body. The writer is flushed but not closed.
+     *
+     * @param delta  changes since the previous build, listed below the features, may be null
+     * @param limits features that do not fit are left out, the worst ones are kept. If the rest of the message does
+     *               not fit either, fewer changes are named and then the extra text is cut.
+     */
+    public void writeSlackMessage(final Writer out, final String jobName, final int buildNumber, final String jenkinsUrl,
+                                  final String extra, final CucumberDelta delta, final SlackMessageLimits limits) throws IOException {
+        final String buildLink = getJenkinsHyperlink(jenkinsUrl, jobName, buildNumber);
+        final String reportLink = buildLink + "cucumber-html-reports/";
+        String header = toHeader(buildLink, buildNumber, extra);
+        int maxNames = limits.getMaxFeatures();
+        long frame = frameBytes(header, reportLink, jobName, delta, maxNames);
+        while (frame > limits.getMaxPayloadBytes() && delta != null && maxNames > 0) {
+            maxNames = maxNames / 2;
+            frame = frameBytes(header, reportLink, jobName, delta, maxNames);
+        }
+        if (frame > limits.getMaxPayloadBytes() && StringUtils.isNotEmpty(extra)) {
+            header = toHeader(buildLink, buildNumber, truncate(extra, jsonStringBytes(extra) - (frame - limits.getMaxPayloadBytes())));
+            frame = frameBytes(header, reportLink, jobName, delta, maxNames);
+        }
+        final int[] features = selectFeatures(reportLink, limits, limits.getMaxPayloadBytes() - frame);
+        write(new JsonWriter(out), header, reportLink, jobName, delta, features, getTotalFeatures() - features.length, maxNames);
+    }
+
+    /**
+     * @return size of everything but the features, with room for the "...and N more" line
+     */
+    private long frameBytes(final String header, final String reportLink, final String jobName, final CucumberDelta delta,
+                            final int maxNames) throws IOException {
+        final Utf8CountingWriter frame = new Utf8CountingWriter();
+        write(new JsonWriter(frame), header, reportLink, jobName, delta, new int[0], getTotalFeatures(), maxNames);
+        return frame.getBytes();
+    }
+
+    private void write(final JsonWriter json, final String header, final String reportLink, final String jobName,
+                       final CucumberDelta delta, final int[] features, final int hidden, final int maxNames) throws IOException {
+        SlackMessageLayout.begin(json, header, getPassPercentage());
+        writeFields(json, reportLink, features, hidden, delta, maxNames);
+        SlackMessageLayout.end(json, getPassPercentage(), jobName);
+    }
+
+    /**
+     * Picks the features that are listed: at most {@code maxFeatures} of the worst ones, chosen with a heap of that
+     * size, and of those as many as fit the byte budget, worst first. Returned in report order.
+     *
+     * @param budget bytes left for the features once the rest of the message is rendered
+     */
+    private int[] selectFeatures(final String reportLink, final SlackMessageLimits limits, long budget) {
+        final int total = getTotalFeatures();
+
+        final Integer[] candidates;
+        if (total <= limits.getMaxFeatures()) {
+            candidates = new Integer[total];
+            for (int i = 0; i < total; i++) {
+                candidates[i] = i;
+            }
         } else {
-            addAttachmentColor(attachmentsJson, "danger");
-            json.addProperty("icon_emoji", ":thumbsdown:");
+            // the best feature seen so far is at the head, so it is the one dropped when the heap overflows
+            final Comparator<Integer> worst = worstFirst();
+            final PriorityQueue<Integer> heap = new PriorityQueue<>(limits.getMaxFeatures() + 1, worst.reversed());
+            for (int i = 0; i < total; i++) {
+                heap.add(i);
+                if (heap.size() > limits.getMaxFeatures()) {
+                    heap.poll();
+                }
+            }
+            candidates = heap.toArray(new Integer[0]);
+        }
+        Arrays.sort(candidates, worstFirst());
+
+        final long linkPrefix = 1 + jsonStringBytes(reportLink) + "report-feature_".length();
+        int kept = 0;
+        for (Integer index : candidates) {
+            final long cost = featureFieldsBytes(index, linkPrefix);
+            if (cost > budget) {
+                break;
+            }
+            budget = budget - cost;
+            candidates[kept++] = index;
+        }
+
+        final int[] features = new int[kept];
+        for (int i = 0; i < kept; i++) {
+            features[i] = candidates[i];
+        }
+        Arrays.sort(features);
+        return features;
+    }
+
+    private Comparator<Integer> worstFirst() {
+        return Comparator.<Integer>comparingInt(featureResults::getPassPercentage).thenComparingInt(i -> i);
+    }
+
+    /**
+     * @return rendered size of a feature's two fields, each {@code {"value":"...","short":true}} and a comma
+     */
+    private long featureFieldsBytes(final int index, final long linkPrefix) {
+        long link = linkPrefix + digits((long) String.valueOf(featureResults.getUri(index)).hashCode() + Integer.MAX_VALUE)
+                + ".html|".length() + jsonStringBytes(String.valueOf(featureResults.getDisplayName(index))) + 1;
+        if (index != 0) {
+            link = link + digits(index) + 1;
+        }
+        return 26 + link + 26 + SlackMessageLayout.percentage(featureResults.getPassPercentage(index)).length();
+    }
+
+    private static int digits(final long n) {
+        return Long.toString(n).length();
+    }
+
+    /**
+     * @return UTF-8 size of the string once escaped by {@link JsonWriter}, without the quotes
+     */
+    static long jsonStringBytes(final String s) {
+        long bytes = 0;
+        for (int i = 0; i < s.length(); i++) {
+            bytes = bytes + jsonCharBytes(s.charAt(i));
+        }
+        return bytes;
+    }
+
+    private static int jsonCharBytes(final char c) {
+        if (c == '"' || c == '\\' || c == '\t' || c == '\b' || c == '\n' || c == '\r' || c == '\f') {
+            return 2;
+        } else if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+            return 6;
+        } else if (c < 0x80) {
+            return 1;
         }
+        return c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+    }
 
-        json.add("attachments", attachmentsJson);
-        json.addProperty("username", jobName);
-        return json.toString();
+    /**
+     * @return the longest start of the string that is at most {@code maxBytes} once escaped, ending in an ellipsis
+     * if it was cut
+     */
+    static String truncate(final String s, final long maxBytes) {
+        if (jsonStringBytes(s) <= maxBytes) {
+            return s;
+        }
+        // room for the ellipsis, three bytes in UTF-8
+        long bytes = 3;
+        int end = 0;
+        while (end < s.length() && bytes + jsonCharBytes(s.charAt(end)) <= maxBytes) {
+            bytes = bytes + jsonCharBytes(s.charAt(end));
+            end = end + 1;
+        }
+        if (end > 0 && Character.isHighSurrogate(s.charAt(end - 1))) {
+            end = end - 1;
+        }
+        return end == 0 ? "" : s.substring(0, end) + "\u2026";
     }
 
     private String getJenkinsHyperlink(final String jenkinsUrl, final String jobName, final int buildNumber) {
@@ -74,6 +289,10 @@ public class CucumberResult {
     }
 
     public String toHeader(final String jobName, final int buildNumber, final String jenkinsUrl, final String extra) {
+        return toHeader(getJenkinsHyperlink(jenkinsUrl, jobName, buildNumber), buildNumber, extra);
+    }
+
+    private String toHeader(final String buildLink, final int buildNumber, final String extra) {
         StringBuilder s = new StringBuilder();
         if (StringUtils.isNotEmpty(extra)) {
             s.append(extra);
@@ -83,74 +302,52 @@ public class CucumberResult {
         s.append(", Scenarios: ");
         s.append(getTotalScenarios());
         s.append(", Build: <");
-        s.append(getJenkinsHyperlink(jenkinsUrl, jobName, buildNumber));
+        s.append(buildLink);
         s.append("cucumber-html-reports/|");
         s.append(buildNumber);
         s.append(">");
         return s.toString();
     }
 
-    private void addCaption(final JsonObject json, final int buildNumber, final String jobName, final String jenkinsUrl, final String extra) {
-        json.addProperty("text", toHeader(jobName, buildNumber, jenkinsUrl, extra));
-    }
-
-    private void addAttachmentColor(JsonArray jsonArray, String colorValue) {
-        jsonArray.get(0).getAsJsonObject().addProperty("color", colorValue);
-    }
-
-    private JsonArray getFields(final String jobName, final int buildNumber, final String jenkinsUrl) {
-        final String hyperLink = getJenkinsHyperlink(jenkinsUrl, jobName, buildNumber) + "cucumber-html-reports/";
-        final JsonArray fields = new JsonArray();
-        fields.add(shortTitle("Features"));
-        fields.add(shortTitle("Pass %"));
-        generateFeaturesFields(fields, hyperLink);
-        fields.add(shortObject("-------------------------------"));
-        fields.add(shortObject("-------"));
-        fields.add(shortObject("Total Passed"));
-        fields.add(shortObject(getPassPercentage() + " %"));
-        return fields;
+    private void writeFields(final JsonWriter json, final String reportLink, final int[] features, final int hidden,
+                             final CucumberDelta delta, final int maxNames) throws IOException {
+        SlackMessageLayout.titles(json, "Features", "Pass %");
+        writeFeatureFields(json, reportLink, features);
+        if (hidden > 0) {
+            json.beginObject();
+            json.name("value").value("\u2026and " + hidden + " more");
+            json.name("short").value(false);
+            json.endObject();
+        }
+        SlackMessageLayout.total(json, "Total Passed", getPassPercentage());
+        if (delta != null) {
+            delta.writeFields(json, maxNames);
+        }
     }
 
-    private void generateFeaturesFields(JsonArray fields, String hyperLink){
-        int counter = 0;
-        for (FeatureResult feature : getFeatureResults()) {
-            final String featureDisplayName = feature.getDisplayName();
-            final String featureFileUri = feature.getUri();
-
-            if (counter == 0){
-                fields.add(shortObject("<" + hyperLink + "report-feature_" + toValidFileName(featureFileUri) + ".html|" + featureDisplayName + ">"));
-            }else{
-                fields.add(shortObject("<" + hyperLink + "report-feature_" + counter + "_" + toValidFileName(featureFileUri) + ".html|" + featureDisplayName + ">"));
+    private void writeFeatureFields(final JsonWriter json, final String reportLink, final int[] features) throws IOException {
+        // one builder reused for every link, the prefix up to the report directory is only copied
+        final StringBuilder link = new StringBuilder(reportLink.length() + 128).append('<').append(reportLink).append("report-feature_");
+        final int prefix = link.length();
+        for (int counter : features) {
+            link.setLength(prefix);
+            if (counter != 0) {
+                link.append(counter).append('_');
             }
-
-            fields.add(shortObject(feature.getPassPercentage() + " %"));
-            counter++;
+            appendValidFileName(link, featureResults.getUri(counter));
+            link.append(".html|").append(featureResults.getDisplayName(counter)).append('>');
+            SlackMessageLayout.row(json, link.toString(), SlackMessageLayout.percentage(featureResults.getPassPercentage(counter)));
         }
     }
 
-    private JsonObject shortObject(final String value) {
-        JsonObject obj = new JsonObject();
-        obj.addProperty("value", value);
-        obj.addProperty("short", true);
-        return obj;
-    }
-
-    private JsonObject shortTitle(final String title) {
-        JsonObject obj = new JsonObject();
-        obj.addProperty("title", title);
-        obj.addProperty("short", true);
-        return obj;
-    }
-
     /**
-     * Converts characters of passed string and replaces to hash which can be treated as valid file name
+     * Appends a hash of the passed string which can be treated as valid file name
      *
      * @param fileName sequence that should be converted
-     * @return converted string
      */
-    private String toValidFileName(String fileName) {
+    private static void appendValidFileName(final StringBuilder s, final String fileName) {
         // adds MAX_VALUE to eliminate minus character which might be returned by hashCode()
-        return Long.toString((long) fileName.hashCode() + Integer.MAX_VALUE);
+        s.append((long) String.valueOf(fileName).hashCode() + Integer.MAX_VALUE);
     }
 
-}
\ No newline at end of file
+}
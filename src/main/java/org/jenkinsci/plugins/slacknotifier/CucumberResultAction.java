@@ -0,0 +1,146 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import hudson.model.InvisibleAction;
+import hudson.model.Run;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per feature results of a report posted for a build, kept so later builds can report what changed without the
+ * old reports. Features are stored as one {@code pct<TAB>uri<TAB>name} line each rather than as a list of
+ * {@link FeatureResult} elements, which keeps {@code build.xml} small and quick to load. When the report has
+ * durations the line ends with {@code <TAB>nanos<TAB>histogram}, and the slowest scenarios are kept as
+ * {@code nanos<TAB>feature<TAB>scenario} lines.
+ */
+public class CucumberResultAction extends InvisibleAction {
+
+    private final String report;
+    private final int totalScenarios;
+    private final int passPercentage;
+    private final String features;
+    private final String slowest;
+
+    public CucumberResultAction(String report, CucumberResult result) {
+        this.report = report;
+        this.totalScenarios = result.getTotalScenarios();
+        this.passPercentage = result.getPassPercentage();
+        this.features = encode(result.getFeatureResults());
+        this.slowest = result.getSlowestScenarios().isEmpty() ? null : encodeTimings(result.getSlowestScenarios());
+    }
+
+    /**
+     * @return the action recorded for the given report path or glob, or null if the build did not post it
+     */
+    public static CucumberResultAction find(Run<?, ?> build, String report) {
+        if (build == null) {
+            return null;
+        }
+        for (CucumberResultAction action : build.getActions(CucumberResultAction.class)) {
+            if (action.report.equals(report)) {
+                return action;
+            }
+        }
+        return null;
+    }
+
+    public String getReport() {
+        return report;
+    }
+
+    public int getTotalScenarios() {
+        return totalScenarios;
+    }
+
+    public int getPassPercentage() {
+        return passPercentage;
+    }
+
+    public CucumberResult getResult() {
+        final CucumberResult result = new CucumberResult(decode(features), totalScenarios, passPercentage);
+        if (slowest != null) {
+            result.setSlowestScenarios(decodeTimings(slowest));
+        }
+        return result;
+    }
+
+    static String encode(List<FeatureResult> features) {
+        final StringBuilder s = new StringBuilder();
+        for (FeatureResult feature : features) {
+            s.append(feature.getPassPercentage()).append('\t')
+                    .append(escape(feature.getUri())).append('\t')
+                    .append(escape(feature.getDisplayName()));
+            if (feature.getDurations() != null) {
+                s.append('\t').append(feature.getDurationNanos()).append('\t').append(feature.getDurations().encode());
+            }
+            s.append('\n');
+        }
+        return s.toString();
+    }
+
+    static List<FeatureResult> decode(String features) {
+        final FeatureTable.Builder results = new FeatureTable.Builder(16);
+        int start = 0;
+        while (start < features.length()) {
+            int end = features.indexOf('\n', start);
+            if (end < 0) {
+                end = features.length();
+            }
+            final int uri = features.indexOf('\t', start);
+            final int name = features.indexOf('\t', uri + 1);
+            // lines written before durations were recorded end after the name
+            int nanos = features.indexOf('\t', name + 1);
+            if (nanos > end) {
+                nanos = -1;
+            }
+            final int pct = Integer.parseInt(features.substring(start, uri));
+            final String featureUri = unescape(features.substring(uri + 1, name));
+            if (nanos < 0) {
+                results.add(featureUri, unescape(features.substring(name + 1, end)), pct, 0, null);
+            } else {
+                final int histogram = features.indexOf('\t', nanos + 1);
+                results.add(featureUri, unescape(features.substring(name + 1, nanos)), pct,
+                        Long.parseLong(features.substring(nanos + 1, histogram)),
+                        DurationHistogram.decode(features.substring(histogram + 1, end)));
+            }
+            start = end + 1;
+        }
+        return results.build();
+    }
+
+    static String encodeTimings(List<ScenarioTiming> timings) {
+        final StringBuilder s = new StringBuilder();
+        for (ScenarioTiming timing : timings) {
+            s.append(timing.getNanos()).append('\t')
+                    .append(escape(timing.getFeature())).append('\t')
+                    .append(escape(timing.getScenario())).append('\n');
+        }
+        return s.toString();
+    }
+
+    static List<ScenarioTiming> decodeTimings(String timings) {
+        final List<ScenarioTiming> results = new ArrayList<>();
+        int start = 0;
+        while (start < timings.length()) {
+            int end = timings.indexOf('\n', start);
+            if (end < 0) {
+                end = timings.length();
+            }
+            final int feature = timings.indexOf('\t', start);
+            final int scenario = timings.indexOf('\t', feature + 1);
+            results.add(new ScenarioTiming(unescape(timings.substring(feature + 1, scenario)),
+                    unescape(timings.substring(scenario + 1, end)), Long.parseLong(timings.substring(start, feature))));
+            start = end + 1;
+        }
+        return results;
+    }
+
+    // uris and names never legitimately contain tabs or line breaks, so they are flattened rather than escaped
+    private static String escape(String s) {
+        return s == null ? "" : s.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    private static String unescape(String s) {
+        return s.isEmpty() ? null : s;
+    }
+}
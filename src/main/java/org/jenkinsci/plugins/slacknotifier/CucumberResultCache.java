@@ -0,0 +1,114 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of parsed reports keyed by report fingerprint, bounded by the estimated heap the cached results
+ * retain. Results always list all features, successful ones are hidden when the message is rendered.
+ */
+public class CucumberResultCache {
+
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    private static final CucumberResultCache SHARED = new CucumberResultCache(DEFAULT_MAX_BYTES);
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxBytes;
+    private long bytes;
+    private long hits;
+    private long misses;
+
+    CucumberResultCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public static CucumberResultCache get() {
+        return SHARED;
+    }
+
+    public synchronized CucumberResult get(String key) {
+        final Entry entry = entries.get(key);
+        if (entry == null) {
+            misses = misses + 1;
+            return null;
+        }
+        hits = hits + 1;
+        return entry.result;
+    }
+
+    public synchronized void put(String key, CucumberResult result) {
+        final long size = estimateSize(key, result);
+        if (size > maxBytes) {
+            return;
+        }
+        final Entry previous = entries.put(key, new Entry(result, size));
+        if (previous != null) {
+            bytes = bytes - previous.size;
+        }
+        bytes = bytes + size;
+        evict();
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    private void evict() {
+        final Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes = bytes - eldest.next().getValue().size;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Rough retained size: array and object headers plus the bytes of the strings, good enough to bound the cache
+     * without walking the heap.
+     */
+    static long estimateSize(String key, CucumberResult result) {
+        long size = 64 + 2L * key.length();
+        size = size + result.getFeatureTable().estimateSize();
+        for (ScenarioTiming timing : result.getSlowestScenarios()) {
+            size = size + 48 + 2L * length(timing.getScenario());
+        }
+        return size;
+    }
+
+    private static int length(String s) {
+        return s == null ? 0 : s.length();
+    }
+
+    private static final class Entry {
+        private final CucumberResult result;
+        private final long size;
+
+        Entry(CucumberResult result, long size) {
+            this.result = result;
+            this.size = size;
+        }
+    }
+}
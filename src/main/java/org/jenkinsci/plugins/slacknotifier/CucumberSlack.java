@@ -1,10 +1,14 @@
 package org.jenkinsci.plugins.slacknotifier;
 
 import hudson.Extension;
+import hudson.Util;
 import hudson.model.Job;
 import hudson.model.JobProperty;
 import hudson.model.JobPropertyDescriptor;
+import hudson.scheduler.CronTabList;
 import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
+import hudson.util.Secret;
 import jenkins.model.Jenkins;
 import net.sf.json.JSONObject;
 import org.kohsuke.stapler.QueryParameter;
@@ -12,6 +16,8 @@ import org.kohsuke.stapler.StaplerRequest;
 
 import javax.servlet.ServletException;
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class CucumberSlack extends JobProperty<Job<?, ?>> {
 
@@ -24,13 +30,42 @@ public class CucumberSlack extends JobProperty<Job<?, ?>> {
         return (CucumberSlackDescriptor) Jenkins.getInstance().getDescriptor(getClass());
     }
 
+    private static final int DEFAULT_CONNECT_TIMEOUT = 10;
+    private static final int DEFAULT_READ_TIMEOUT = 30;
+    private static final int DEFAULT_MESSAGE_UPDATE_INTERVAL = 10;
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = PooledHttpTransport.DEFAULT_MAX_CONNECTIONS_PER_HOST;
+
     @Extension
     public static final class CucumberSlackDescriptor extends JobPropertyDescriptor {
 
         private String webHookEndpoint;
+        private int connectTimeout;
+        private int readTimeout;
+        private int maxConnectionsPerHost;
+        private boolean synchronousDelivery;
+        private int dispatcherWorkers;
+        private int dispatcherQueueCapacity;
+        private SlackNotificationDispatcher.OverflowPolicy overflowPolicy;
+        private Boolean persistNotifications;
+        private int coalesceWindow;
+        private boolean hashReports;
+        private int maxFeatures;
+        private int maxPayloadBytes;
+        private Integer slowdownPercent;
+        private Secret botToken;
+        private String apiUrl;
+        private int messageUpdateInterval;
+        private Integer circuitFailureThreshold;
+        private int circuitProbeInterval;
+        private String digestSchedule;
+        private int digestWorstJobs;
+
+        private transient SlackClient.Transport transport;
+        private transient boolean dispatcherConfigured;
 
         public CucumberSlackDescriptor() {
             load();
+            configureCircuitBreaker();
         }
 
         @Override
@@ -41,6 +76,32 @@ public class CucumberSlack extends JobProperty<Job<?, ?>> {
         @Override
         public boolean configure(StaplerRequest req, JSONObject formData) throws FormException {
             webHookEndpoint = formData.getString("webHookEndpoint");
+            connectTimeout = formData.optInt("connectTimeout", DEFAULT_CONNECT_TIMEOUT);
+            readTimeout = formData.optInt("readTimeout", DEFAULT_READ_TIMEOUT);
+            maxConnectionsPerHost = formData.optInt("maxConnectionsPerHost", DEFAULT_MAX_CONNECTIONS_PER_HOST);
+            synchronousDelivery = formData.optBoolean("synchronousDelivery");
+            dispatcherWorkers = formData.optInt("dispatcherWorkers", SlackNotificationDispatcher.DEFAULT_WORKERS);
+            dispatcherQueueCapacity = formData.optInt("dispatcherQueueCapacity", SlackNotificationDispatcher.DEFAULT_QUEUE_CAPACITY);
+            overflowPolicy = SlackNotificationDispatcher.OverflowPolicy.valueOf(
+                    formData.optString("overflowPolicy", SlackNotificationDispatcher.OverflowPolicy.BLOCK.name()));
+            persistNotifications = formData.optBoolean("persistNotifications", true);
+            coalesceWindow = Math.max(0, formData.optInt("coalesceWindow", 0));
+            hashReports = formData.optBoolean("hashReports");
+            maxFeatures = formData.optInt("maxFeatures", SlackMessageLimits.DEFAULT_MAX_FEATURES);
+            maxPayloadBytes = formData.optInt("maxPayloadBytes", SlackMessageLimits.DEFAULT_MAX_PAYLOAD_BYTES);
+            slowdownPercent = Math.max(0, formData.optInt("slowdownPercent", CucumberDelta.DEFAULT_SLOWDOWN_PERCENT));
+            botToken = Secret.fromString(Util.fixEmptyAndTrim(formData.optString("botToken")));
+            apiUrl = Util.fixEmptyAndTrim(formData.optString("apiUrl"));
+            messageUpdateInterval = formData.optInt("messageUpdateInterval", DEFAULT_MESSAGE_UPDATE_INTERVAL);
+            circuitFailureThreshold = Math.max(0, formData.optInt("circuitFailureThreshold", SlackCircuitBreaker.DEFAULT_FAILURE_THRESHOLD));
+            circuitProbeInterval = formData.optInt("circuitProbeInterval", SlackCircuitBreaker.DEFAULT_PROBE_INTERVAL);
+            digestSchedule = Util.fixEmptyAndTrim(formData.optString("digestSchedule"));
+            digestWorstJobs = formData.optInt("digestWorstJobs", ScheduledDigest.DEFAULT_WORST_JOBS);
+            configureCircuitBreaker();
+            synchronized (this) {
+                transport = null;
+                dispatcherConfigured = false;
+            }
             save();
             return super.configure(req, formData);
         }
@@ -49,6 +110,210 @@ public class CucumberSlack extends JobProperty<Job<?, ?>> {
             return webHookEndpoint;
         }
 
+        /**
+         * @return connect timeout in seconds
+         */
+        public int getConnectTimeout() {
+            return connectTimeout > 0 ? connectTimeout : DEFAULT_CONNECT_TIMEOUT;
+        }
+
+        /**
+         * @return read timeout in seconds
+         */
+        public int getReadTimeout() {
+            return readTimeout > 0 ? readTimeout : DEFAULT_READ_TIMEOUT;
+        }
+
+        public int getMaxConnectionsPerHost() {
+            return maxConnectionsPerHost > 0 ? maxConnectionsPerHost : DEFAULT_MAX_CONNECTIONS_PER_HOST;
+        }
+
+        /**
+         * @return true if builds wait for slack to accept a message instead of queueing it
+         */
+        public boolean isSynchronousDelivery() {
+            return synchronousDelivery;
+        }
+
+        public int getDispatcherWorkers() {
+            return dispatcherWorkers > 0 ? dispatcherWorkers : SlackNotificationDispatcher.DEFAULT_WORKERS;
+        }
+
+        public int getDispatcherQueueCapacity() {
+            return dispatcherQueueCapacity > 0 ? dispatcherQueueCapacity : SlackNotificationDispatcher.DEFAULT_QUEUE_CAPACITY;
+        }
+
+        public SlackNotificationDispatcher.OverflowPolicy getOverflowPolicy() {
+            return overflowPolicy != null ? overflowPolicy : SlackNotificationDispatcher.OverflowPolicy.BLOCK;
+        }
+
+        /**
+         * @return true if messages are written to the outbox before delivery, so they survive restarts and outages
+         */
+        public boolean isPersistNotifications() {
+            return persistNotifications == null || persistNotifications;
+        }
+
+        public int getPendingNotifications() {
+            return NotificationOutbox.get().getPendingCount();
+        }
+
+        /**
+         * @return seconds results for the same channel and job are collected into one digest, 0 to post every result
+         */
+        public int getCoalesceWindow() {
+            return coalesceWindow;
+        }
+
+        /**
+         * @return true if cached results are only reused when the report content hashes the same, not just its size
+         * and modification time
+         */
+        public boolean isHashReports() {
+            return hashReports;
+        }
+
+        /**
+         * @return number of features listed in a message, the worst ones are kept
+         */
+        public int getMaxFeatures() {
+            return maxFeatures > 0 ? maxFeatures : SlackMessageLimits.DEFAULT_MAX_FEATURES;
+        }
+
+        public int getMaxPayloadBytes() {
+            return maxPayloadBytes > 0 ? maxPayloadBytes : SlackMessageLimits.DEFAULT_MAX_PAYLOAD_BYTES;
+        }
+
+        /**
+         * @return how much the 95th percentile duration of a feature has to grow before it is flagged as slower,
+         * 0 if slowdowns are not flagged
+         */
+        public int getSlowdownPercent() {
+            return slowdownPercent == null ? CucumberDelta.DEFAULT_SLOWDOWN_PERCENT : slowdownPercent;
+        }
+
+        /**
+         * @return token of the bot that posts to channels given by name or id, null if only webhooks are used
+         */
+        public Secret getBotToken() {
+            return botToken;
+        }
+
+        public String getApiUrl() {
+            return apiUrl != null ? apiUrl : SlackWebApiClient.DEFAULT_API_URL;
+        }
+
+        /**
+         * @return seconds a message posted through the Web API is left alone before it is updated again
+         */
+        public int getMessageUpdateInterval() {
+            return messageUpdateInterval > 0 ? messageUpdateInterval : DEFAULT_MESSAGE_UPDATE_INTERVAL;
+        }
+
+        /**
+         * @return a client for the Web API, null if no bot token is configured
+         */
+        public SlackWebApiClient getWebApiClient() {
+            final String token = botToken == null ? null : Util.fixEmpty(botToken.getPlainText());
+            return token == null ? null : new SlackWebApiClient(getApiUrl(), token, getTransport());
+        }
+
+        /**
+         * @return deliveries to a webhook that have to fail in a row before messages to it are rejected, 0 to never
+         * reject messages
+         */
+        public int getCircuitFailureThreshold() {
+            return circuitFailureThreshold == null ? SlackCircuitBreaker.DEFAULT_FAILURE_THRESHOLD : circuitFailureThreshold;
+        }
+
+        /**
+         * @return seconds messages to a failing webhook are rejected before one is let through to probe it
+         */
+        public int getCircuitProbeInterval() {
+            return circuitProbeInterval > 0 ? circuitProbeInterval : SlackCircuitBreaker.DEFAULT_PROBE_INTERVAL;
+        }
+
+        /**
+         * @return webhooks whose deliveries are failing, for the global configuration page
+         */
+        public List<SlackCircuitBreaker.Status> getCircuitStatuses() {
+            return SlackCircuitBreaker.shared().getStatuses();
+        }
+
+        private void configureCircuitBreaker() {
+            SlackCircuitBreaker.shared().configure(getCircuitFailureThreshold(), TimeUnit.SECONDS.toMillis(getCircuitProbeInterval()));
+        }
+
+        /**
+         * @return cron schedule the digest of jobs that opted into it is posted on, null if it is never posted
+         */
+        public String getDigestSchedule() {
+            return digestSchedule;
+        }
+
+        /**
+         * @return jobs listed in a scheduled digest, the ones with the lowest pass percentage
+         */
+        public int getDigestWorstJobs() {
+            return digestWorstJobs > 0 ? digestWorstJobs : ScheduledDigest.DEFAULT_WORST_JOBS;
+        }
+
+        public int getDigestJobCount() {
+            return ScheduledDigest.get().getJobCount();
+        }
+
+        public SlackMessageLimits getMessageLimits() {
+            return new SlackMessageLimits(getMaxFeatures(), getMaxPayloadBytes());
+        }
+
+        public ListBoxModel doFillOverflowPolicyItems() {
+            ListBoxModel items = new ListBoxModel();
+            items.add("Block the build until there is room", SlackNotificationDispatcher.OverflowPolicy.BLOCK.name());
+            items.add("Drop the notification", SlackNotificationDispatcher.OverflowPolicy.DROP.name());
+            return items;
+        }
+
+        /**
+         * @return the dispatcher, configured with the current global settings
+         */
+        public synchronized SlackNotificationDispatcher getDispatcher() {
+            SlackNotificationDispatcher dispatcher = SlackNotificationDispatcher.get();
+            if (!dispatcherConfigured) {
+                dispatcher.configure(getDispatcherWorkers(), getDispatcherQueueCapacity(), getOverflowPolicy());
+                dispatcherConfigured = true;
+            }
+            return dispatcher;
+        }
+
+        public int getQueueDepth() {
+            return SlackNotificationDispatcher.get().getQueueDepth();
+        }
+
+        /**
+         * @return the transport messages are posted with, shared by all builds
+         */
+        public synchronized SlackClient.Transport getTransport() {
+            if (transport == null) {
+                PooledHttpTransport pooled = PooledHttpTransport.shared();
+                pooled.configure(getConnectTimeout() * 1000, getReadTimeout() * 1000, getMaxConnectionsPerHost());
+                transport = pooled;
+            }
+            return transport;
+        }
+
+        public FormValidation doCheckDigestSchedule(@QueryParameter String value) {
+            final String schedule = Util.fixEmptyAndTrim(value);
+            if (schedule == null) {
+                return FormValidation.ok();
+            }
+            try {
+                CronTabList.create(schedule);
+            } catch (Exception e) {
+                return FormValidation.error("Invalid schedule: " + e.getMessage());
+            }
+            return FormValidation.ok();
+        }
+
         public FormValidation doCheckWebHookEndpoint(@QueryParameter String value) throws IOException, ServletException {
             if (value.length() == 0) {
                 return FormValidation.error("Please set a webHookEndpoint");
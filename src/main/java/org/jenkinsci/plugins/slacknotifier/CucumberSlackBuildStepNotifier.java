@@ -12,6 +12,7 @@ import hudson.util.FormValidation;
 import net.sf.json.JSONObject;
 import org.apache.commons.lang.StringUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 
@@ -26,6 +27,8 @@ public class CucumberSlackBuildStepNotifier extends Builder {
     private final String channel;
     private final String json;
     private final boolean hideSuccessfulResults;
+    private boolean digest;
+    private boolean digestOnly;
 
     @DataBoundConstructor
     public CucumberSlackBuildStepNotifier(String channel, String json, boolean hideSuccessfulResults) {
@@ -46,6 +49,24 @@ public class CucumberSlackBuildStepNotifier extends Builder {
         return hideSuccessfulResults;
     }
 
+    public boolean isDigest() {
+        return digest;
+    }
+
+    @DataBoundSetter
+    public void setDigest(boolean digest) {
+        this.digest = digest;
+    }
+
+    public boolean isDigestOnly() {
+        return digestOnly;
+    }
+
+    @DataBoundSetter
+    public void setDigestOnly(boolean digestOnly) {
+        this.digestOnly = digestOnly;
+    }
+
     @Override
     public boolean perform(AbstractBuild build, Launcher launcher, BuildListener listener) {
         String webhookUrl = CucumberSlack.get().getWebHookEndpoint();
@@ -58,7 +79,15 @@ public class CucumberSlackBuildStepNotifier extends Builder {
         CucumberSlackService service = new CucumberSlackService(webhookUrl);
         final FilePath workspace = build.getWorkspace();
         if (workspace != null) {
-            service.sendCucumberReportToSlack(build, workspace, json, channel, null, hideSuccessfulResults);
+            if (!digest && !digestOnly) {
+                service.sendCucumberReportToSlack(build, workspace, json, channel, null, hideSuccessfulResults, false, listener);
+                return true;
+            }
+            final CucumberResult result = service.readCucumberResult(workspace, json, listener);
+            service.addToScheduledDigest(build, result, json, channel, listener);
+            if (!digestOnly) {
+                service.sendCucumberResultToSlack(build, result, json, channel, null, hideSuccessfulResults, false, listener);
+            }
             return true;
         }
         return false;
@@ -0,0 +1,53 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+import hudson.Extension;
+import jenkins.metrics.api.MetricProvider;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Publishes {@link CucumberSlackMetrics} in the Jenkins metrics registry when the metrics plugin is installed.
+ */
+@Extension(optional = true)
+public class CucumberSlackMetricProvider extends MetricProvider {
+
+    private static final String PREFIX = "cucumber-slack";
+
+    @Override
+    public MetricSet getMetricSet() {
+        final CucumberSlackMetrics metrics = CucumberSlackMetrics.shared();
+        final Map<String, Metric> gauges = new HashMap<>();
+        gauge(gauges, metrics::getParseCount, "parse", "count");
+        gauge(gauges, metrics::getParseMeanMillis, "parse", "mean-ms");
+        gauge(gauges, metrics::getParseMaxMillis, "parse", "max-ms");
+        gauge(gauges, metrics::getRenderCount, "render", "count");
+        gauge(gauges, metrics::getRenderMeanMillis, "render", "mean-ms");
+        gauge(gauges, metrics::getRenderMaxMillis, "render", "max-ms");
+        gauge(gauges, metrics::getDeliverCount, "deliver", "count");
+        gauge(gauges, metrics::getDeliverMeanMillis, "deliver", "mean-ms");
+        gauge(gauges, metrics::getDeliverMaxMillis, "deliver", "max-ms");
+        gauge(gauges, metrics::getReportBytes, "report", "bytes");
+        gauge(gauges, metrics::getFeatures, "report", "features");
+        gauge(gauges, metrics::getScenarios, "report", "scenarios");
+        gauge(gauges, metrics::getCacheHits, "report", "cache-hits");
+        gauge(gauges, metrics::getPayloadBytes, "payload", "bytes");
+        gauge(gauges, metrics::getRetries, "http", "retries");
+        for (int status : new int[]{200, 400, 403, 404, 429, 500, 502, 503}) {
+            gauge(gauges, () -> metrics.getHttpStatusCount(status), "http", Integer.toString(status));
+        }
+        gauge(gauges, metrics::getQueueDepth, "queue", "depth");
+        gauge(gauges, metrics::getDroppedNotifications, "queue", "dropped");
+        gauge(gauges, metrics::getPendingNotifications, "outbox", "pending");
+        return () -> gauges;
+    }
+
+    private static void gauge(Map<String, Metric> gauges, Supplier<?> value, String... names) {
+        gauges.put(MetricRegistry.name(PREFIX, names), (Gauge<Object>) value::get);
+    }
+}
@@ -0,0 +1,229 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Timers and counters for each stage of a notification: parsing the report (reading it included), rendering the
+ * message and delivering it to slack. Exposed over JMX and, when the metrics plugin is installed, in the Jenkins
+ * metrics registry.
+ */
+public class CucumberSlackMetrics implements CucumberSlackMetricsMXBean {
+
+    private static final Logger LOG = Logger.getLogger(CucumberSlackMetrics.class.getName());
+
+    static final String OBJECT_NAME = "org.jenkinsci.plugins.slacknotifier:type=CucumberSlackMetrics";
+
+    private static final CucumberSlackMetrics SHARED = new CucumberSlackMetrics();
+
+    private final StageTimer parse = new StageTimer();
+    private final StageTimer render = new StageTimer();
+    private final StageTimer deliver = new StageTimer();
+    private final LongAdder reportBytes = new LongAdder();
+    private final LongAdder features = new LongAdder();
+    private final LongAdder scenarios = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder payloadBytes = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final ConcurrentMap<Integer, LongAdder> httpStatuses = new ConcurrentHashMap<>();
+
+    public static CucumberSlackMetrics shared() {
+        return SHARED;
+    }
+
+    void recordParse(long nanos, CucumberResult result) {
+        parse.record(nanos);
+        reportBytes.add(result.getReportBytes());
+        features.add(result.getTotalFeatures());
+        scenarios.add(result.getTotalScenarios());
+    }
+
+    void recordCacheHit() {
+        cacheHits.increment();
+    }
+
+    void recordRender(long nanos) {
+        render.record(nanos);
+    }
+
+    void recordDeliver(long nanos) {
+        deliver.record(nanos);
+    }
+
+    void recordPost(long payloadLength, int status) {
+        payloadBytes.add(payloadLength);
+        httpStatuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+    }
+
+    void recordRetry() {
+        retries.increment();
+    }
+
+    @Override
+    public long getParseCount() {
+        return parse.getCount();
+    }
+
+    @Override
+    public double getParseMeanMillis() {
+        return parse.getMeanMillis();
+    }
+
+    @Override
+    public double getParseMaxMillis() {
+        return parse.getMaxMillis();
+    }
+
+    @Override
+    public long getRenderCount() {
+        return render.getCount();
+    }
+
+    @Override
+    public double getRenderMeanMillis() {
+        return render.getMeanMillis();
+    }
+
+    @Override
+    public double getRenderMaxMillis() {
+        return render.getMaxMillis();
+    }
+
+    @Override
+    public long getDeliverCount() {
+        return deliver.getCount();
+    }
+
+    @Override
+    public double getDeliverMeanMillis() {
+        return deliver.getMeanMillis();
+    }
+
+    @Override
+    public double getDeliverMaxMillis() {
+        return deliver.getMaxMillis();
+    }
+
+    @Override
+    public long getReportBytes() {
+        return reportBytes.sum();
+    }
+
+    @Override
+    public long getFeatures() {
+        return features.sum();
+    }
+
+    @Override
+    public long getScenarios() {
+        return scenarios.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getPayloadBytes() {
+        return payloadBytes.sum();
+    }
+
+    @Override
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    @Override
+    public Map<String, Long> getHttpStatuses() {
+        final Map<String, Long> statuses = new TreeMap<>();
+        httpStatuses.forEach((status, count) -> statuses.put(Integer.toString(status), count.sum()));
+        return statuses;
+    }
+
+    long getHttpStatusCount(int status) {
+        final LongAdder count = httpStatuses.get(status);
+        return count == null ? 0 : count.sum();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return SlackNotificationDispatcher.get().getQueueDepth();
+    }
+
+    @Override
+    public long getDroppedNotifications() {
+        return SlackNotificationDispatcher.get().getDroppedCount();
+    }
+
+    @Override
+    public int getPendingNotifications() {
+        return NotificationOutbox.get().getPendingCount();
+    }
+
+    @Initializer(after = InitMilestone.PLUGINS_STARTED)
+    public static void register() {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(SHARED, name);
+            }
+        } catch (JMException e) {
+            LOG.log(Level.WARNING, "Unable to register cucumber slack metrics with JMX", e);
+        }
+    }
+
+    @Terminator
+    public static void unregister() {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            LOG.log(Level.FINE, "Unable to unregister cucumber slack metrics from JMX", e);
+        }
+    }
+
+    static final class StageTimer {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        long getCount() {
+            return count.sum();
+        }
+
+        double getMeanMillis() {
+            final long n = count.sum();
+            return n == 0 ? 0 : totalNanos.sum() / (double) n / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        double getMaxMillis() {
+            return maxNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link CucumberSlackMetrics}, registered as
+ * {@code org.jenkinsci.plugins.slacknotifier:type=CucumberSlackMetrics}.
+ */
+public interface CucumberSlackMetricsMXBean {
+
+    long getParseCount();
+
+    double getParseMeanMillis();
+
+    double getParseMaxMillis();
+
+    long getRenderCount();
+
+    double getRenderMeanMillis();
+
+    double getRenderMaxMillis();
+
+    long getDeliverCount();
+
+    double getDeliverMeanMillis();
+
+    double getDeliverMaxMillis();
+
+    long getReportBytes();
+
+    long getFeatures();
+
+    long getScenarios();
+
+    long getCacheHits();
+
+    long getPayloadBytes();
+
+    long getRetries();
+
+    Map<String, Long> getHttpStatuses();
+
+    int getQueueDepth();
+
+    long getDroppedNotifications();
+
+    int getPendingNotifications();
+}
@@ -14,6 +14,7 @@ import hudson.util.FormValidation;
 import net.sf.json.JSONObject;
 import org.apache.commons.lang.StringUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 
@@ -28,6 +29,8 @@ public class CucumberSlackPostBuildNotifier extends Recorder {
     private final String channel;
     private final String json;
     private final boolean hideSuccessfulResults;
+    private boolean digest;
+    private boolean digestOnly;
 
     @DataBoundConstructor
     public CucumberSlackPostBuildNotifier(String channel, String json, boolean hideSuccessfulResults) {
@@ -48,6 +51,24 @@ public class CucumberSlackPostBuildNotifier extends Recorder {
         return hideSuccessfulResults;
     }
 
+    public boolean isDigest() {
+        return digest;
+    }
+
+    @DataBoundSetter
+    public void setDigest(boolean digest) {
+        this.digest = digest;
+    }
+
+    public boolean isDigestOnly() {
+        return digestOnly;
+    }
+
+    @DataBoundSetter
+    public void setDigestOnly(boolean digestOnly) {
+        this.digestOnly = digestOnly;
+    }
+
     @Override
     public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
             throws InterruptedException, IOException {
@@ -64,7 +85,15 @@ public class CucumberSlackPostBuildNotifier extends Recorder {
         CucumberSlackService service = new CucumberSlackService(webhookUrl);
         final FilePath workspace = build.getWorkspace();
         if (workspace != null) {
-            service.sendCucumberReportToSlack(build, workspace, json, channel, null, hideSuccessfulResults);
+            if (!digest && !digestOnly) {
+                service.sendCucumberReportToSlack(build, workspace, json, channel, null, hideSuccessfulResults, false, listener);
+                return true;
+            }
+            final CucumberResult result = service.readCucumberResult(workspace, json, listener);
+            service.addToScheduledDigest(build, result, json, channel, listener);
+            if (!digestOnly) {
+                service.sendCucumberResultToSlack(build, result, json, channel, null, hideSuccessfulResults, false, listener);
+            }
             return true;
         }
         return false;
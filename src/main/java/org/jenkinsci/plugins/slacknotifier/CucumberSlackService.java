@@ -1,20 +1,29 @@
 package org.jenkinsci.plugins.slacknotifier;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonElement;
-import com.google.gson.stream.JsonReader;
 import hudson.FilePath;
+import hudson.Util;
+import hudson.model.Computer;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Job;
 import hudson.model.Run;
+import hudson.model.TaskListener;
 import jenkins.model.JenkinsLocationConfiguration;
+import jenkins.util.Timer;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class CucumberSlackService {
 
     private static final Logger LOG = Logger.getLogger(CucumberSlackService.class.getName());
+    private static final String MULTIBRANCH_PROJECT = "jenkins.branch.MultiBranchProject";
     private final String jenkinsUrl;
 
     public CucumberSlackService(String webhookUrl) {
@@ -22,22 +31,348 @@ public class CucumberSlackService {
     }
 
     public void sendCucumberReportToSlack(Run<?, ?> build, FilePath workspace, String json, String channelWebhookUrl, String extra, boolean hideSuccessfulResults) {
-        LOG.info("Posting cucumber reports to slack for '" + build.getParent().getDisplayName() + "'");
+        sendCucumberReportToSlack(build, workspace, json, channelWebhookUrl, extra, hideSuccessfulResults, false);
+    }
+
+    /**
+     * @param waitForDelivery post on the calling thread so delivery failures are thrown to the caller, otherwise the
+     *                        message is queued unless synchronous delivery is configured globally. The message is
+     *                        then not spooled to the outbox either, a failed delivery is always thrown.
+     */
+    public void sendCucumberReportToSlack(Run<?, ?> build, FilePath workspace, String json, String channelWebhookUrl, String extra, boolean hideSuccessfulResults,
+                                          boolean waitForDelivery) {
+        sendCucumberReportToSlack(build, workspace, json, channelWebhookUrl, extra, hideSuccessfulResults, waitForDelivery, TaskListener.NULL);
+    }
+
+    /**
+     * @param listener receives a breakdown of where the time went, for the build log
+     */
+    public void sendCucumberReportToSlack(Run<?, ?> build, FilePath workspace, String json, String channelWebhookUrl, String extra, boolean hideSuccessfulResults,
+                                          boolean waitForDelivery, TaskListener listener) {
+        final CucumberResult result = readCucumberResult(workspace, json, listener);
+        sendCucumberResultToSlack(build, result, json, channelWebhookUrl, extra, hideSuccessfulResults, waitForDelivery, listener);
+    }
+
+    /**
+     * Parses the report(s) on the agent they are on, or returns the result parsed earlier if they did not change. All
+     * features are read, successful ones are only hidden when the message is rendered, so the result stored on the
+     * build can tell a fixed feature from one that was left out.
+     *
+     * @throws RuntimeException if the reports could not be read
+     */
+    public CucumberResult readCucumberResult(FilePath workspace, String json, TaskListener listener) {
         LOG.info("Cucumber reports are in '" + workspace + "'");
+        return getResult(workspace, json, CucumberSlack.get().isHashReports(), listener.getLogger());
+    }
+
+    /**
+     * Posts a result read with {@link #readCucumberResult}.
+     *
+     * @param allFeatures the result with all features, it is stored on the build as it is
+     * @param json the report path or glob the result was read from, it is compared with the same report of earlier
+     *             builds
+     */
+    public void sendCucumberResultToSlack(Run<?, ?> build, CucumberResult allFeatures, String json, String channelWebhookUrl, String extra,
+                                          boolean hideSuccessfulResults, boolean waitForDelivery, TaskListener listener) {
+        LOG.info("Posting cucumber reports to slack for '" + build.getParent().getDisplayName() + "'");
+
+        final PrintStream logger = listener.getLogger();
+        CucumberSlack.CucumberSlackDescriptor descriptor = CucumberSlack.get();
+
+        final List<SlackClient> clients = new ArrayList<>();
+        final List<String> channels = new ArrayList<>();
+        for (String target : SlackFanOut.parseTargets(channelWebhookUrl)) {
+            if (SlackWebApiClient.isChannel(target)) {
+                channels.add(target);
+            } else {
+                clients.add(new SlackClient(jenkinsUrl, target, hideSuccessfulResults, descriptor.getTransport()));
+            }
+        }
+        if (clients.isEmpty() && channels.isEmpty()) {
+            clients.add(new SlackClient(jenkinsUrl, channelWebhookUrl, hideSuccessfulResults, descriptor.getTransport()));
+        }
+        final String jobName = build.getParent().getDisplayName();
+        final String description = jobName + " #" + build.getNumber();
+        final CucumberDelta delta = recordResult(build, json, allFeatures, descriptor.getSlowdownPercent());
+        final CucumberResult result = hideSuccessfulResults ? allFeatures.withoutSuccessfulFeatures() : allFeatures;
+
+        final boolean synchronous = waitForDelivery || descriptor.isSynchronousDelivery();
+        // a caller that waits for delivery has to see it fail, so its message is not spooled for redelivery
+        final NotificationOutbox outbox = descriptor.isPersistNotifications() && !waitForDelivery ? NotificationOutbox.get() : null;
+        final SlackNotificationDispatcher dispatcher = synchronous ? null : descriptor.getDispatcher();
+        if (!channels.isEmpty()) {
+            final String message = result.toSlackMessage(jobName, build.getNumber(), Util.fixNull(jenkinsUrl), extra, delta,
+                    descriptor.getMessageLimits());
+            publishToChannels(build, channels, message, description, descriptor, dispatcher, logger);
+            if (clients.isEmpty()) {
+                return;
+            }
+        }
+        final int coalesceWindow = descriptor.getCoalesceWindow();
+        final boolean coalesce = !synchronous && coalesceWindow > 0;
+
+        long start = System.nanoTime();
+        if (outbox == null && !coalesce && clients.size() == 1) {
+            // nothing has to keep the message, so it is rendered straight into the request body. This only happens
+            // with persistence off: the outbox (on by default) and the digest window both need the rendered string.
+            final SlackClient client = clients.get(0);
+            client.sendMessage(client.toSlackPayload(result, jobName, build.getNumber(), extra, delta, descriptor.getMessageLimits()),
+                    description, dispatcher);
+            logDelivery(logger, dispatcher, start);
+            return;
+        }
+
+        // rendered once however many webhooks it goes to
+        final String message = clients.get(0).toSlackMessage(result, jobName, build.getNumber(), extra, delta, descriptor.getMessageLimits());
+        final long renderNanos = System.nanoTime() - start;
+        CucumberSlackMetrics.shared().recordRender(renderNanos);
+        logger.printf("Cucumber slack: rendered a message of %d characters in %d ms%n", message.length(),
+                TimeUnit.NANOSECONDS.toMillis(renderNanos));
 
-        JsonElement jsonElement = getResultFileAsJsonElement(workspace, json);
-        SlackClient client = new SlackClient(jenkinsUrl, channelWebhookUrl, hideSuccessfulResults);
-        client.postToSlack(jsonElement, build.getParent().getDisplayName(), build.getNumber(), extra);
+        if (!coalesce) {
+            start = System.nanoTime();
+            if (dispatcher == null && clients.size() > 1) {
+                logFanOut(logger, SlackFanOut.send(clients, message, description, outbox));
+                return;
+            }
+            for (SlackClient client : clients) {
+                client.sendMessage(message, description, outbox, dispatcher);
+            }
+            logDelivery(logger, dispatcher, start);
+            return;
+        }
+        logger.printf("Cucumber slack: collecting results for %d s before posting a digest%n", coalesceWindow);
+
+        final Item group = getCoalesceGroup(build.getParent());
+        final String title = group.getFullDisplayName();
+        CucumberDigest.Entry entry = new CucumberDigest.Entry(description,
+                Util.fixNull(jenkinsUrl) + build.getUrl() + "cucumber-html-reports/", result, message);
+        for (final SlackClient client : clients) {
+            NotificationCoalescer.get().submit(client.getChannelWebhookUrl() + "\n" + group.getFullName(), entry,
+                    TimeUnit.SECONDS.toMillis(coalesceWindow), entries -> {
+                        String coalesced = entries.size() == 1 ? entries.get(0).getMessage() : new CucumberDigest(title, entries).toSlackMessage();
+                        client.sendMessage(coalesced, title + " (" + entries.size() + " builds)", outbox, dispatcher);
+                    });
+        }
+    }
+
+    /**
+     * Adds the result to the scheduled digest of each channel or webhook rather than, or besides, posting it now.
+     * The result is still stored on the build, so the next build is compared with it.
+     */
+    public void addToScheduledDigest(Run<?, ?> build, CucumberResult result, String json, String channelWebhookUrl, TaskListener listener) {
+        final CucumberSlack.CucumberSlackDescriptor descriptor = CucumberSlack.get();
+        recordResult(build, json, result, 0);
+        final Job<?, ?> job = build.getParent();
+        final List<String> targets = new ArrayList<>(SlackFanOut.parseTargets(channelWebhookUrl));
+        if (targets.isEmpty() && descriptor.getWebHookEndpoint() != null) {
+            targets.add(descriptor.getWebHookEndpoint());
+        }
+        for (String target : targets) {
+            ScheduledDigest.get().record(target, job.getFullName(), job.getFullDisplayName(), Util.fixNull(jenkinsUrl) + job.getUrl(), result);
+        }
+        if (descriptor.getDigestSchedule() == null) {
+            listener.getLogger().println("Cucumber slack: no digest schedule is configured, the result is not posted until one is");
+        } else {
+            listener.getLogger().printf("Cucumber slack: added to the digest of %d channels, posted on '%s'%n", targets.size(),
+                    descriptor.getDigestSchedule());
+        }
+    }
+
+    /**
+     * Counts the scenarios added to a report that is still being written, on the agent the report is on.
+     *
+     * @param tail totals of the earlier calls, a new {@link ReportTail} for the first one
+     * @return the updated totals
+     */
+    public ReportTail tailReport(FilePath workspace, String json, ReportTail tail) throws IOException, InterruptedException {
+        return workspace.act(new ReportTailCallable(json, tail));
+    }
+
+    /**
+     * Posts the progress of a build whose report is still being written. Channels get one message that is updated
+     * as the totals change and later replaced by the final result. Webhooks cannot edit a message, so they are only
+     * sent alerts.
+     *
+     * @param alert why the build is flagged, null for a plain progress update
+     */
+    public void sendProgressToSlack(Run<?, ?> build, String channelWebhookUrl, ReportTail progress, String alert, TaskListener listener) {
+        final CucumberSlack.CucumberSlackDescriptor descriptor = CucumberSlack.get();
+        final String jobName = build.getParent().getDisplayName();
+        final String description = jobName + " #" + build.getNumber();
+        final String message = progress.toSlackMessage(jobName, build.getNumber(), Util.fixNull(jenkinsUrl) + build.getUrl(), alert);
+        final SlackNotificationDispatcher dispatcher = descriptor.isSynchronousDelivery() ? null : descriptor.getDispatcher();
+        final List<String> channels = new ArrayList<>();
+        final List<SlackClient> clients = new ArrayList<>();
+        for (String target : SlackFanOut.parseTargets(channelWebhookUrl)) {
+            if (SlackWebApiClient.isChannel(target)) {
+                channels.add(target);
+            } else if (alert != null) {
+                clients.add(new SlackClient(jenkinsUrl, target, false, descriptor.getTransport()));
+            }
+        }
+        if (!channels.isEmpty()) {
+            publishToChannels(build, channels, message, description, descriptor, dispatcher, listener.getLogger());
+        }
+        for (SlackClient client : clients) {
+            client.sendMessage(message, description, null, dispatcher);
+        }
+    }
+
+    /**
+     * Posts the message to channels through the Web API, or updates the message this build already posted there.
+     * The outbox and digests do not apply, an update replaces the message rather than adding one.
+     */
+    private static void publishToChannels(Run<?, ?> build, List<String> channels, String message, String description,
+                                          CucumberSlack.CucumberSlackDescriptor descriptor, SlackNotificationDispatcher dispatcher,
+                                          PrintStream logger) {
+        final SlackWebApiClient api = descriptor.getWebApiClient();
+        if (api == null) {
+            throw new IllegalStateException("A bot token has to be configured to post to slack channels " + channels);
+        }
+        final long interval = TimeUnit.SECONDS.toMillis(descriptor.getMessageUpdateInterval());
+        for (String channel : channels) {
+            final SlackMessageAction action = SlackMessageAction.forTarget(build, channel);
+            if (dispatcher == null) {
+                final SlackMessageAction.Outcome outcome = publish(build, action, api, message, interval);
+                logger.printf("Cucumber slack: message in %s %s%n", channel, outcome.name().toLowerCase(Locale.ENGLISH));
+            } else {
+                dispatcher.dispatch(description + " to " + channel, () -> publish(build, action, api, message, interval));
+                logger.printf("Cucumber slack: queued message for %s%n", channel);
+            }
+        }
+    }
+
+    /**
+     * Publishes the message and saves the build once it was first posted, so results after a restart still update
+     * that message instead of posting another.
+     */
+    private static SlackMessageAction.Outcome publish(Run<?, ?> build, SlackMessageAction action, SlackWebApiClient api,
+                                                      String message, long interval) {
+        final SlackMessageAction.Outcome outcome = action.publish(api, message, interval, Timer.get());
+        if (outcome == SlackMessageAction.Outcome.POSTED) {
+            try {
+                build.save();
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Unable to save the slack message posted for " + build, e);
+            }
+        }
+        return outcome;
+    }
+
+    /**
+     * Reports how the delivery to each webhook went.
+     *
+     * @throws RuntimeException if any of them failed, once all of them are done
+     */
+    private static void logFanOut(PrintStream logger, List<SlackFanOut.Outcome> outcomes) {
+        int failed = 0;
+        Throwable failure = null;
+        for (int i = 0; i < outcomes.size(); i++) {
+            final SlackFanOut.Outcome outcome = outcomes.get(i);
+            final String target = "#" + (i + 1) + " (" + SlackFanOut.describe(outcome.getWebhookUrl()) + ")";
+            if (outcome.isDelivered()) {
+                logger.printf("Cucumber slack: delivered to webhook %s in %d ms%n", target,
+                        TimeUnit.NANOSECONDS.toMillis(outcome.getNanos()));
+            } else {
+                failed = failed + 1;
+                failure = failure == null ? outcome.getFailure() : failure;
+                logger.printf("Cucumber slack: delivery to webhook %s failed: %s%n", target, outcome.getFailure().getMessage());
+            }
+        }
+        if (failed > 0) {
+            throw new RuntimeException("Message could not be delivered to " + failed + " of " + outcomes.size() + " webhooks", failure);
+        }
+    }
+
+    private static void logDelivery(PrintStream logger, SlackNotificationDispatcher dispatcher, long start) {
+        if (dispatcher == null) {
+            logger.printf("Cucumber slack: delivered in %d ms%n", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } else {
+            logger.printf("Cucumber slack: queued for delivery, %d notifications waiting%n", dispatcher.getQueueDepth());
+        }
+    }
+
+    /**
+     * Stores the result on the build and compares it with the same report of the last completed build, and its
+     * durations with those of the last few completed builds.
+     *
+     * @param slowdownPercent growth of a feature's 95th percentile duration that is flagged, 0 to not compare durations
+     */
+    private CucumberDelta recordResult(Run<?, ?> build, String json, CucumberResult result, int slowdownPercent) {
+        synchronized (build) {
+            if (CucumberResultAction.find(build, json) == null) {
+                build.addAction(new CucumberResultAction(json, result));
+            }
+        }
+        final CucumberResultAction previous = CucumberResultAction.find(build.getPreviousCompletedBuild(), json);
+        final CucumberDelta delta = CucumberDelta.between(previous == null ? null : previous.getResult(), result);
+        if (slowdownPercent <= 0 || result.getSlowestScenarios().isEmpty()) {
+            return delta;
+        }
+        final List<CucumberResult> recent = new ArrayList<>();
+        Run<?, ?> earlier = build.getPreviousCompletedBuild();
+        for (int i = 0; i < CucumberDelta.SLOWDOWN_BUILDS && earlier != null; i++) {
+            final CucumberResultAction action = CucumberResultAction.find(earlier, json);
+            if (action != null) {
+                recent.add(action.getResult());
+            }
+            earlier = earlier.getPreviousCompletedBuild();
+        }
+        return delta.withSlowdowns(recent, result, slowdownPercent);
+    }
+
+    /**
+     * Builds of the branches of a multibranch project, or of the configurations of a matrix project, are coalesced
+     * together. Any other job is only coalesced with its own builds, also if it shares a folder with other jobs.
+     */
+    static Item getCoalesceGroup(Job<?, ?> job) {
+        final ItemGroup<?> parent = job.getParent();
+        // a matrix configuration's parent is the matrix project, itself a job
+        if (parent instanceof Job || isMultiBranchProject(parent)) {
+            return (Item) parent;
+        }
+        return job;
+    }
+
+    /**
+     * Checked by name, so the plugin does not depend on branch-api.
+     */
+    private static boolean isMultiBranchProject(Object item) {
+        for (Class<?> type = item.getClass(); type != null; type = type.getSuperclass()) {
+            if (MULTIBRANCH_PROJECT.equals(type.getName())) {
+                return true;
+            }
+        }
+        return false;
     }
 
-    private JsonElement getResultFileAsJsonElement(FilePath workspace, String json) {
-        final FilePath jsonPath = new FilePath(workspace, json);
-        LOG.info("file path: " + jsonPath);
+    private CucumberResult getResult(FilePath workspace, String json, boolean hashReports, PrintStream logger) {
+        LOG.info("file path: " + new FilePath(workspace, json));
 
-        final Gson gson = new Gson();
         try {
-            final JsonReader jsonReader = new JsonReader(new InputStreamReader(jsonPath.read(), StandardCharsets.UTF_8));
-            return gson.fromJson(jsonReader, JsonElement.class);
+            // the same report is often sent to several channels or by several steps, only parse it once
+            final CucumberResultCache cache = CucumberResultCache.get();
+            final Computer computer = workspace.toComputer();
+            final String key = (computer == null ? "" : computer.getName()) + ':' + workspace.getRemote() + ':' + json + ':'
+                    + workspace.act(new ReportFingerprintCallable(json, hashReports));
+            CucumberResult result = cache.get(key);
+            if (result == null) {
+                final long start = System.nanoTime();
+                // parsed on the agent, only the summary is sent back to the controller
+                result = workspace.act(new CucumberReportCallable(json, false));
+                final long parseNanos = System.nanoTime() - start;
+                CucumberSlackMetrics.shared().recordParse(parseNanos, result);
+                cache.put(key, result);
+                logger.printf("Cucumber slack: parsed %d bytes of reports, %d features and %d scenarios, in %d ms%n",
+                        result.getReportBytes(), result.getTotalFeatures(), result.getTotalScenarios(),
+                        TimeUnit.NANOSECONDS.toMillis(parseNanos));
+            } else {
+                LOG.fine("Using cached result for " + json);
+                CucumberSlackMetrics.shared().recordCacheHit();
+                logger.println("Cucumber slack: reports unchanged, reusing the result parsed earlier");
+            }
+            return result;
         } catch (IOException | InterruptedException e) {
             LOG.severe("Exception occurred while reading test results: " + e);
             throw new RuntimeException("Exception occurred while reading test results", e);
@@ -0,0 +1,103 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import org.jenkinsci.plugins.scriptsecurity.sandbox.whitelists.Whitelisted;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What a pipeline script gets back from {@code cucumberSummary} and {@code cucumberSlackSend}: the totals of a
+ * report and the names of its failing features, at most as many as a slack message lists. It is a few numbers and
+ * strings, so keeping it in the program state costs next to nothing, unlike the report itself.
+ */
+public final class CucumberSummary implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int passPercentage;
+    private final int totalScenarios;
+    private final List<String> failedFeatures;
+    // 0 in summaries written before it was added, see getFailedFeatureCount
+    private final int failedFeatureCount;
+
+    public CucumberSummary(int passPercentage, int totalScenarios, List<String> failedFeatures) {
+        this(passPercentage, totalScenarios, failedFeatures, failedFeatures.size());
+    }
+
+    /**
+     * @param failedFeatures     names of failed features, possibly only the first of them
+     * @param failedFeatureCount number of failed features in the report
+     */
+    public CucumberSummary(int passPercentage, int totalScenarios, List<String> failedFeatures, int failedFeatureCount) {
+        this.passPercentage = passPercentage;
+        this.totalScenarios = totalScenarios;
+        this.failedFeatures = Collections.unmodifiableList(new ArrayList<>(failedFeatures));
+        this.failedFeatureCount = failedFeatureCount;
+    }
+
+    public static CucumberSummary of(CucumberResult result) {
+        return of(result, SlackMessageLimits.DEFAULT_MAX_FEATURES);
+    }
+
+    /**
+     * @param maxFeatures number of failed features named, the others are only counted
+     */
+    public static CucumberSummary of(CucumberResult result, int maxFeatures) {
+        final FeatureTable features = result.getFeatureTable();
+        final List<String> failed = new ArrayList<>();
+        int failedCount = 0;
+        for (int i = 0; i < features.size(); i++) {
+            if (features.getPassPercentage(i) != 100) {
+                if (failedCount++ < maxFeatures) {
+                    final String name = features.getDisplayName(i);
+                    failed.add(name != null ? name : String.valueOf(features.getUri(i)));
+                }
+            }
+        }
+        return new CucumberSummary(result.getPassPercentage(), result.getTotalScenarios(), failed, failedCount);
+    }
+
+    @Whitelisted
+    public int getPassPercentage() {
+        return passPercentage;
+    }
+
+    @Whitelisted
+    public int getTotalScenarios() {
+        return totalScenarios;
+    }
+
+    /**
+     * @return names of the features with a failed scenario, only the first ones if there are many
+     */
+    @Whitelisted
+    public List<String> getFailedFeatures() {
+        return failedFeatures;
+    }
+
+    /**
+     * @return number of features with a failed scenario, named or not
+     */
+    @Whitelisted
+    public int getFailedFeatureCount() {
+        return Math.max(failedFeatureCount, failedFeatures.size());
+    }
+
+    /**
+     * @return true if every scenario passed
+     */
+    @Whitelisted
+    public boolean isSuccessful() {
+        return passPercentage == 100;
+    }
+
+    @Whitelisted
+    @Override
+    public String toString() {
+        return "Scenarios: " + totalScenarios + ", Pass: " + passPercentage + " %"
+                + (failedFeatures.isEmpty() ? "" : ", Failed: " + String.join(", ", failedFeatures))
+                + (getFailedFeatureCount() > failedFeatures.size() ? " \u2026and " + (getFailedFeatureCount() - failedFeatures.size()) + " more" : "");
+    }
+}
@@ -0,0 +1,135 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scenario durations of a feature counted into fixed buckets, so percentiles can be estimated and compared across
+ * builds from a dozen numbers instead of every duration.
+ */
+public final class DurationHistogram implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // upper bounds of the buckets, the last bucket has no upper bound
+    private static final long[] BOUNDS = {
+            millis(100), millis(250), millis(500), millis(1000), millis(2500), millis(5000),
+            millis(10000), millis(30000), millis(60000), millis(300000)
+    };
+
+    private final int[] counts;
+
+    public DurationHistogram() {
+        this.counts = new int[BOUNDS.length + 1];
+    }
+
+    private DurationHistogram(int[] counts) {
+        this.counts = counts;
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    public void add(long nanos) {
+        int bucket = 0;
+        while (bucket < BOUNDS.length && nanos > BOUNDS[bucket]) {
+            bucket = bucket + 1;
+        }
+        counts[bucket] = counts[bucket] + 1;
+    }
+
+    public void merge(DurationHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = counts[i] + other.counts[i];
+        }
+    }
+
+    public int getCount() {
+        int count = 0;
+        for (int c : counts) {
+            count = count + c;
+        }
+        return count;
+    }
+
+    /**
+     * @param quantile between 0 and 1, e.g. 0.95
+     * @return upper bound of the bucket the quantile falls into, the lower bound for the last bucket, 0 when empty
+     */
+    public long percentileNanos(double quantile) {
+        final int count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen = seen + counts[i];
+            if (seen >= rank && counts[i] > 0) {
+                return i < BOUNDS.length ? BOUNDS[i] : BOUNDS[BOUNDS.length - 1];
+            }
+        }
+        return BOUNDS[BOUNDS.length - 1];
+    }
+
+    /**
+     * @return the counts separated by commas, trailing empty buckets left out
+     */
+    String encode() {
+        int last = counts.length;
+        while (last > 0 && counts[last - 1] == 0) {
+            last = last - 1;
+        }
+        final StringBuilder s = new StringBuilder();
+        for (int i = 0; i < last; i++) {
+            if (i > 0) {
+                s.append(',');
+            }
+            s.append(counts[i]);
+        }
+        return s.toString();
+    }
+
+    static DurationHistogram decode(String encoded) {
+        final int[] counts = new int[BOUNDS.length + 1];
+        if (!encoded.isEmpty()) {
+            final String[] parts = encoded.split(",");
+            for (int i = 0; i < parts.length && i < counts.length; i++) {
+                counts[i] = Integer.parseInt(parts[i]);
+            }
+        }
+        return new DurationHistogram(counts);
+    }
+
+    /**
+     * @return a short human readable duration, e.g. {@code 250 ms}, {@code 2.5 s} or {@code 5 min}
+     */
+    public static String format(long nanos) {
+        final long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        if (millis < 1000) {
+            return millis + " ms";
+        }
+        if (millis < 60000) {
+            return (millis % 1000 == 0 ? Long.toString(millis / 1000) : String.format(Locale.ROOT, "%.1f", millis / 1000.0)) + " s";
+        }
+        return String.format(Locale.ROOT, "%.1f min", millis / 60000.0).replace(".0 ", " ");
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof DurationHistogram && Arrays.equals(counts, ((DurationHistogram) o).counts);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(counts);
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
@@ -1,14 +1,31 @@
 package org.jenkinsci.plugins.slacknotifier;
 
-public class FeatureResult {
+import java.io.Serializable;
+
+public class FeatureResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
     private final String uri;
     private final String name;
     private final int passPercentage;
+    private final long durationNanos;
+    private final DurationHistogram durations;
 
     public FeatureResult(String uri, String name, int passPercentage) {
+        this(uri, name, passPercentage, 0, null);
+    }
+
+    /**
+     * @param durationNanos sum of all step durations
+     * @param durations     scenario durations, null if the report has none
+     */
+    public FeatureResult(String uri, String name, int passPercentage, long durationNanos, DurationHistogram durations) {
         this.uri = uri;
         this.name = name;
         this.passPercentage = passPercentage;
+        this.durationNanos = durationNanos;
+        this.durations = durations;
     }
 
     public String toString() {
@@ -26,4 +43,15 @@ public class FeatureResult {
     public int getPassPercentage() {
         return this.passPercentage;
     }
-}
\ No newline at end of file
+
+    public long getDurationNanos() {
+        return this.durationNanos;
+    }
+
+    /**
+     * @return scenario durations, null if the report did not record any
+     */
+    public DurationHistogram getDurations() {
+        return this.durations;
+    }
+}
@@ -0,0 +1,202 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * The features of a {@link CucumberResult} stored column by column. Pass percentages and durations are kept in
+ * primitive arrays. Uris and names are indexes into one table of distinct strings, held back to back in a single
+ * string. A uri is split after its last {@code /}, so the directory is stored once however many features it holds.
+ * A {@link FeatureResult} is only created when a feature is asked for. A result with tens of thousands of features
+ * is therefore a handful of arrays, not several objects per feature.
+ */
+final class FeatureTable extends AbstractList<FeatureResult> implements RandomAccess, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int NONE = -1;
+
+    // string i is text[offsets[i], offsets[i + 1])
+    private final String text;
+    private final int[] offsets;
+    private final int[] names;
+    // directory of the uri including the trailing '/', NONE if it has none
+    private final int[] uriPrefixes;
+    // rest of the uri, NONE if the feature has no uri
+    private final int[] uriSuffixes;
+    private final int[] passPercentages;
+    // null when no feature has durations
+    private final long[] durationNanos;
+    private final DurationHistogram[] durations;
+
+    private FeatureTable(Builder builder) {
+        final int size = builder.size;
+        this.text = builder.text.toString();
+        this.offsets = Arrays.copyOf(builder.offsets, builder.strings + 1);
+        this.names = Arrays.copyOf(builder.names, size);
+        this.uriPrefixes = Arrays.copyOf(builder.uriPrefixes, size);
+        this.uriSuffixes = Arrays.copyOf(builder.uriSuffixes, size);
+        this.passPercentages = Arrays.copyOf(builder.passPercentages, size);
+        this.durationNanos = builder.timed ? Arrays.copyOf(builder.durationNanos, size) : null;
+        this.durations = builder.timed ? Arrays.copyOf(builder.durations, size) : null;
+    }
+
+    /**
+     * @return the features as a table, the list itself if it already is one
+     */
+    static FeatureTable of(List<FeatureResult> features) {
+        if (features instanceof FeatureTable) {
+            return (FeatureTable) features;
+        }
+        final Builder builder = new Builder(features.size());
+        for (FeatureResult feature : features) {
+            builder.add(feature.getUri(), feature.getDisplayName(), feature.getPassPercentage(), feature.getDurationNanos(),
+                    feature.getDurations());
+        }
+        return builder.build();
+    }
+
+    @Override
+    public int size() {
+        return passPercentages.length;
+    }
+
+    /**
+     * @return a new view of the feature, prefer the column getters when only one of its values is needed
+     */
+    @Override
+    public FeatureResult get(int index) {
+        return new FeatureResult(getUri(index), getDisplayName(index), getPassPercentage(index), getDurationNanos(index),
+                getDurations(index));
+    }
+
+    String getUri(int index) {
+        final int suffix = uriSuffixes[index];
+        if (suffix == NONE) {
+            return null;
+        }
+        final int prefix = uriPrefixes[index];
+        return prefix == NONE ? string(suffix) : string(prefix).concat(string(suffix));
+    }
+
+    String getDisplayName(int index) {
+        return string(names[index]);
+    }
+
+    int getPassPercentage(int index) {
+        return passPercentages[index];
+    }
+
+    long getDurationNanos(int index) {
+        return durationNanos == null ? 0 : durationNanos[index];
+    }
+
+    DurationHistogram getDurations(int index) {
+        return durations == null ? null : durations[index];
+    }
+
+    private String string(int index) {
+        return index == NONE ? null : text.substring(offsets[index], offsets[index + 1]);
+    }
+
+    /**
+     * @return rough retained size, for {@link CucumberResultCache}
+     */
+    long estimateSize() {
+        long size = 64 + text.length() + 4L * offsets.length + 16L * passPercentages.length;
+        if (durations != null) {
+            size = size + 12L * durations.length;
+            for (DurationHistogram histogram : durations) {
+                if (histogram != null) {
+                    size = size + 80;
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Adds features one by one, strings that were added before are stored once.
+     */
+    static final class Builder {
+
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final StringBuilder text = new StringBuilder();
+        private int[] offsets = new int[17];
+        private int strings;
+
+        private int size;
+        private int[] names;
+        private int[] uriPrefixes;
+        private int[] uriSuffixes;
+        private int[] passPercentages;
+        private long[] durationNanos;
+        private DurationHistogram[] durations;
+        private boolean timed;
+
+        Builder(int expectedSize) {
+            final int capacity = Math.max(expectedSize, 4);
+            names = new int[capacity];
+            uriPrefixes = new int[capacity];
+            uriSuffixes = new int[capacity];
+            passPercentages = new int[capacity];
+            durationNanos = new long[capacity];
+            durations = new DurationHistogram[capacity];
+        }
+
+        /**
+         * @param durations scenario durations, null if the report has none
+         */
+        Builder add(String uri, String name, int passPercentage, long nanos, DurationHistogram durations) {
+            if (size == passPercentages.length) {
+                grow();
+            }
+            names[size] = intern(name);
+            final int slash = uri == null ? -1 : uri.lastIndexOf('/');
+            uriPrefixes[size] = slash < 0 ? NONE : intern(uri.substring(0, slash + 1));
+            uriSuffixes[size] = intern(slash < 0 ? uri : uri.substring(slash + 1));
+            passPercentages[size] = passPercentage;
+            durationNanos[size] = nanos;
+            this.durations[size] = durations;
+            timed = timed || nanos != 0 || durations != null;
+            size = size + 1;
+            return this;
+        }
+
+        private int intern(String s) {
+            if (s == null) {
+                return NONE;
+            }
+            final Integer id = ids.get(s);
+            if (id != null) {
+                return id;
+            }
+            if (strings + 1 == offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            text.append(s);
+            offsets[strings + 1] = text.length();
+            ids.put(s, strings);
+            return strings++;
+        }
+
+        private void grow() {
+            final int capacity = passPercentages.length * 2;
+            names = Arrays.copyOf(names, capacity);
+            uriPrefixes = Arrays.copyOf(uriPrefixes, capacity);
+            uriSuffixes = Arrays.copyOf(uriSuffixes, capacity);
+            passPercentages = Arrays.copyOf(passPercentages, capacity);
+            durationNanos = Arrays.copyOf(durationNanos, capacity);
+            durations = Arrays.copyOf(durations, capacity);
+        }
+
+        FeatureTable build() {
+            return new FeatureTable(this);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Running scenario counts and durations for a single feature while a report is being parsed.
+ */
+class FeatureTally {
+
+    /**
+     * Slowest scenarios kept per feature, enough to pick the slowest of the whole report from.
+     */
+    static final int SLOWEST_SCENARIOS = 10;
+
+    private String uri;
+    private String name;
+    private int scenarios;
+    private int failed;
+    private long durationNanos;
+    // a background runs before every scenario, so its duration is added to the scenario that follows it
+    private long backgroundNanos;
+    // and if it fails, so does the scenario that follows it
+    private boolean backgroundFailed;
+    private boolean timed;
+    private final DurationHistogram durations = new DurationHistogram();
+    // fastest at the head, so it is the one dropped when there are too many
+    private final PriorityQueue<ScenarioTiming> slowest = new PriorityQueue<>(SLOWEST_SCENARIOS + 1, ScenarioTiming.FASTEST_FIRST);
+    // scenario key -> passed, only kept when results of several reports (reruns) have to be merged
+    private Map<String, Boolean> outcomes;
+    // scenario key -> slowest run, kept with the outcomes
+    private Map<String, ScenarioTiming> timings;
+
+    void trackOutcomes() {
+        outcomes = new HashMap<>();
+        timings = new HashMap<>();
+    }
+
+    String getUri() {
+        return uri;
+    }
+
+    void setUri(String uri) {
+        this.uri = uri;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the key features are merged on, the uri or the name if a report does not record uris
+     */
+    String getKey() {
+        return uri != null ? uri : name;
+    }
+
+    int getScenarios() {
+        return outcomes != null ? outcomes.size() : scenarios;
+    }
+
+    int getFailed() {
+        if (outcomes == null) {
+            return failed;
+        }
+        int count = 0;
+        for (Boolean passed : outcomes.values()) {
+            if (!passed) {
+                count = count + 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Records a parsed scenario or background. A background is not counted on its own, it is part of the scenario
+     * that follows it, which fails if the background did. Reports with and without tracked outcomes count the same.
+     */
+    void addElement(String key, boolean scenario, boolean failedElement) {
+        addElement(key, null, scenario, failedElement, -1);
+    }
+
+    /**
+     * @param nanos sum of the element's step durations, -1 if the report does not record durations
+     */
+    void addElement(String key, String scenarioName, boolean scenario, boolean failedElement, long nanos) {
+        if (!scenario) {
+            backgroundFailed = backgroundFailed || failedElement;
+        }
+        if (nanos >= 0) {
+            timed = true;
+            durationNanos = durationNanos + nanos;
+            if (!scenario) {
+                backgroundNanos = backgroundNanos + nanos;
+            }
+        }
+        final ScenarioTiming timing;
+        if (scenario && nanos >= 0) {
+            timing = new ScenarioTiming(null, scenarioName != null ? scenarioName : key, nanos + backgroundNanos);
+            backgroundNanos = 0;
+        } else {
+            timing = null;
+        }
+
+        if (!scenario) {
+            return;
+        }
+        final boolean failedScenario = failedElement || backgroundFailed;
+        backgroundFailed = false;
+        if (outcomes != null) {
+            outcomes.merge(key, !failedScenario, Boolean::logicalOr);
+            if (timing != null) {
+                timings.merge(key, timing, FeatureTally::slower);
+            }
+            return;
+        }
+        scenarios = scenarios + 1;
+        if (failedScenario) {
+            failed = failed + 1;
+        }
+        if (timing != null) {
+            durations.add(timing.getNanos());
+            keepIfSlow(timing);
+        }
+    }
+
+    private void keepIfSlow(ScenarioTiming timing) {
+        slowest.add(timing);
+        if (slowest.size() > SLOWEST_SCENARIOS) {
+            slowest.poll();
+        }
+    }
+
+    private static ScenarioTiming slower(ScenarioTiming a, ScenarioTiming b) {
+        return a.getNanos() >= b.getNanos() ? a : b;
+    }
+
+    /**
+     * Merges a rerun of the same feature, a scenario counts once and passes if it passed in any of the runs. Its
+     * duration is that of its slowest run.
+     */
+    void merge(FeatureTally other) {
+        if (name == null) {
+            name = other.name;
+        }
+        timed = timed || other.timed;
+        durationNanos = durationNanos + other.durationNanos;
+        other.outcomes.forEach((key, passed) -> outcomes.merge(key, passed, Boolean::logicalOr));
+        other.timings.forEach((key, timing) -> timings.merge(key, timing, FeatureTally::slower));
+    }
+
+    int getPassPercentage() {
+        return percentage(getScenarios(), getFailed());
+    }
+
+    void addTo(FeatureTable.Builder table) {
+        finishTimings();
+        table.add(uri, name, getPassPercentage(), durationNanos, timed ? durations : null);
+    }
+
+    /**
+     * @return the slowest scenarios of this feature, at most {@link #SLOWEST_SCENARIOS}
+     */
+    List<ScenarioTiming> getSlowest() {
+        finishTimings();
+        final String feature = name != null ? name : uri;
+        final List<ScenarioTiming> result = new ArrayList<>(slowest.size());
+        for (ScenarioTiming timing : slowest) {
+            result.add(timing.withFeature(feature));
+        }
+        return result;
+    }
+
+    // merged scenarios are only counted once all reports have been merged
+    private void finishTimings() {
+        if (timings == null) {
+            return;
+        }
+        for (ScenarioTiming timing : timings.values()) {
+            durations.add(timing.getNanos());
+            keepIfSlow(timing);
+        }
+        timings = null;
+    }
+
+    static int percentage(int total, int failed) {
+        if (total == 0) {
+            return failed == 0 ? 100 : 0;
+        }
+        return ((total - failed) * 100) / total;
+    }
+}
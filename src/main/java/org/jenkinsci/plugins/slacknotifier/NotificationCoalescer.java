@@ -0,0 +1,101 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import jenkins.util.Timer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Debounces notifications for the same channel and job. The first result for a key opens a window, every result
+ * arriving before it closes is handed to the flush action together, so a burst of builds becomes one message.
+ * Open windows are only held in memory: nothing is spooled to the outbox before the flush, so a restart loses them.
+ */
+@Extension
+public class NotificationCoalescer {
+
+    private static final Logger LOG = Logger.getLogger(NotificationCoalescer.class.getName());
+
+    /**
+     * A window is flushed early once it holds this many results, so a digest stays readable.
+     */
+    static final int MAX_BATCH = 50;
+
+    private final Supplier<ScheduledExecutorService> scheduler;
+    private final Map<String, Batch> batches = new HashMap<>();
+
+    public NotificationCoalescer() {
+        this(Timer::get);
+    }
+
+    NotificationCoalescer(Supplier<ScheduledExecutorService> scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public static NotificationCoalescer get() {
+        return ExtensionList.lookupSingleton(NotificationCoalescer.class);
+    }
+
+    /**
+     * @param key          results with the same key are coalesced
+     * @param windowMillis how long the window stays open after the first result
+     * @param flush        called with all results of the window, the action given with the first result is used
+     */
+    public void submit(final String key, CucumberDigest.Entry entry, long windowMillis, Consumer<List<CucumberDigest.Entry>> flush) {
+        final Batch full;
+        synchronized (this) {
+            Batch batch = batches.get(key);
+            if (batch == null) {
+                batch = new Batch(flush);
+                batches.put(key, batch);
+                final Batch scheduled = batch;
+                scheduler.get().schedule(() -> flush(key, scheduled), windowMillis, TimeUnit.MILLISECONDS);
+            }
+            batch.entries.add(entry);
+            full = batch.entries.size() >= MAX_BATCH ? batches.remove(key) : null;
+        }
+        if (full != null) {
+            run(key, full);
+        }
+    }
+
+    public synchronized int getOpenWindows() {
+        return batches.size();
+    }
+
+    private void flush(String key, Batch batch) {
+        synchronized (this) {
+            // the batch may already have been flushed because it filled up
+            if (!batches.remove(key, batch)) {
+                return;
+            }
+        }
+        run(key, batch);
+    }
+
+    private void run(String key, Batch batch) {
+        try {
+            batch.flush.accept(batch.entries);
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Unable to send coalesced slack notification for " + key, e);
+        }
+    }
+
+    private static final class Batch {
+        private final Consumer<List<CucumberDigest.Entry>> flush;
+        private final List<CucumberDigest.Entry> entries = new ArrayList<>();
+
+        Batch(Consumer<List<CucumberDigest.Entry>> flush) {
+            this.flush = flush;
+        }
+    }
+}
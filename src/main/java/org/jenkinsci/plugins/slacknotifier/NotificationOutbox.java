@@ -0,0 +1,578 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import hudson.util.Secret;
+import jenkins.model.Jenkins;
+import jenkins.model.JenkinsLocationConfiguration;
+import jenkins.util.Timer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only spool of rendered messages under {@code JENKINS_HOME/cucumber-slack-notifier/}. A message is written
+ * (and fsynced, in batches shared by concurrent writers) before it is delivered and acknowledged afterwards, so
+ * messages that could not be delivered because slack was down or the controller restarted are replayed later.
+ * <p>
+ * Only the ids of pending messages are kept in memory, payloads stay on disk and are streamed during replay. Replay
+ * is paged, at most {@link #REPLAY_PAGE} replayed messages wait in the dispatcher at a time.
+ * <p>
+ * A message slack rejects for good (a 4xx answer other than 429, e.g. a revoked webhook) is dropped. Other failures
+ * are retried with growing pauses until the message has failed {@link #MAX_ATTEMPTS} times or is older than
+ * {@link #MAX_AGE_MILLIS}, then it is dropped as well. Every drop is logged as a warning.
+ * <p>
+ * Webhook urls are secrets, they are written to the log encrypted with {@link Secret}.
+ */
+@Extension
+public class NotificationOutbox {
+
+    private static final Logger LOG = Logger.getLogger(NotificationOutbox.class.getName());
+
+    static final String DIRECTORY = "cucumber-slack-notifier";
+    private static final String LOG_FILE = "outbox.log";
+    private static final int COMPACT_AFTER_ACKS = 500;
+
+    static final int REPLAY_PAGE = 100;
+    static final int MAX_ATTEMPTS = 10;
+    static final long MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final long FIRST_RETRY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final long MAX_RETRY_MILLIS = TimeUnit.HOURS.toMillis(1);
+    // a replayed message that has not started after this long is assumed to have been dropped by a full queue
+    private static final long QUEUED_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(15);
+
+    private static final String ADD = "add";
+    private static final String ACK = "ack";
+
+    private final Gson gson = new Gson();
+    private final Path directory;
+    private final Path log;
+    // pending ids and when they were added
+    private final Map<String, Long> pending = new HashMap<>();
+    private final Map<String, Failures> failures = new HashMap<>();
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    // replayed ids waiting in the dispatcher and when they were queued
+    private final Map<String, Long> queued = new ConcurrentHashMap<>();
+    private final Object syncLock = new Object();
+    private final UrlCodec urls;
+
+    private FileChannel channel;
+    private int acks;
+    private long syncedPosition;
+
+    public NotificationOutbox() {
+        this(new File(Jenkins.get().getRootDir(), DIRECTORY), UrlCodec.SECRET);
+    }
+
+    NotificationOutbox(File directory, UrlCodec urls) {
+        this.directory = directory.toPath();
+        this.log = this.directory.resolve(LOG_FILE);
+        this.urls = urls;
+    }
+
+    public static NotificationOutbox get() {
+        return ExtensionList.lookupSingleton(NotificationOutbox.class);
+    }
+
+    /**
+     * @return a key that is the same for the same message to the same webhook, so a message is only spooled once
+     */
+    public static String idempotencyKey(String url, String payload) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(url.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            final byte[] hash = digest.digest(payload.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder s = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                s.append(String.format("%02x", hash[i]));
+            }
+            return s.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Durably records a message before it is delivered.
+     *
+     * @return false if a message with the same id is already waiting for delivery
+     */
+    public boolean add(String id, String url, String payload) throws IOException {
+        final long position;
+        synchronized (this) {
+            open();
+            if (pending.containsKey(id)) {
+                return false;
+            }
+            final long now = System.currentTimeMillis();
+            pending.put(id, now);
+            write(new Record(ADD, id, urls.encode(url), payload, now));
+            position = channel.position();
+        }
+        sync(position);
+        return true;
+    }
+
+    /**
+     * Marks a message as delivered. Acknowledgements are not fsynced, losing one only means the message is
+     * delivered again after a crash.
+     */
+    public synchronized void ack(String id) {
+        inFlight.remove(id);
+        failures.remove(id);
+        if (pending.remove(id) == null) {
+            return;
+        }
+        try {
+            open();
+            if (pending.isEmpty()) {
+                channel.truncate(0);
+                acks = 0;
+                syncedPosition = 0;
+                return;
+            }
+            write(new Record(ACK, id, null, null, 0));
+            acks = acks + 1;
+            if (acks >= COMPACT_AFTER_ACKS) {
+                compact();
+            }
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to acknowledge slack notification " + id + ", it may be delivered twice", e);
+        }
+    }
+
+    public synchronized int getPendingCount() {
+        openQuietly();
+        return pending.size();
+    }
+
+    public synchronized boolean isPending(String id) {
+        openQuietly();
+        return pending.containsKey(id);
+    }
+
+    /**
+     * Runs a delivery for a spooled message unless it is already being delivered, acknowledging it on success. On
+     * failure it is left in the outbox for a later replay, unless slack rejected it for good or it has failed too
+     * often or for too long, then it is dropped.
+     */
+    public void deliver(String id, Runnable delivery) {
+        queued.remove(id);
+        if (!isPending(id) || !inFlight.add(id)) {
+            return;
+        }
+        try {
+            delivery.run();
+            ack(id);
+        } catch (RuntimeException e) {
+            failed(id, e, System.currentTimeMillis());
+        } finally {
+            inFlight.remove(id);
+        }
+    }
+
+    private void failed(String id, RuntimeException e, long now) {
+        final String reason;
+        synchronized (this) {
+            final Long added = pending.get(id);
+            if (added == null) {
+                return;
+            }
+            final Failures failure = failures.computeIfAbsent(id, key -> new Failures());
+            if (SlackClient.StatusException.isPermanent(e)) {
+                reason = "slack rejected it";
+            } else if (failure.record(e, now) >= MAX_ATTEMPTS) {
+                reason = "it failed " + failure.attempts + " times";
+            } else if (now - added > MAX_AGE_MILLIS) {
+                reason = "it is older than " + TimeUnit.MILLISECONDS.toHours(MAX_AGE_MILLIS) + " hours";
+            } else {
+                reason = null;
+            }
+        }
+        if (reason == null) {
+            LOG.log(Level.WARNING, "Unable to deliver slack notification " + id + ", keeping it in the outbox", e);
+            return;
+        }
+        LOG.log(Level.WARNING, "Dropping slack notification " + id + " from the outbox, " + reason, e);
+        ack(id);
+    }
+
+    /**
+     * Streams every message that is still waiting for delivery and not currently being delivered to the consumer.
+     */
+    public void replay(Consumer<Record> consumer) throws IOException {
+        replay(Integer.MAX_VALUE, Long.MAX_VALUE, consumer);
+    }
+
+    /**
+     * Streams at most {@code limit} messages that are due for another attempt at {@code now} to the consumer,
+     * skipping those that are queued or being delivered.
+     *
+     * @return the number of messages streamed
+     */
+    int replay(int limit, long now, Consumer<Record> consumer) throws IOException {
+        final BufferedReader reader;
+        synchronized (this) {
+            open();
+            if (pending.isEmpty()) {
+                return 0;
+            }
+            // opened under the lock so a concurrent compaction cannot swap the file half way, the reader keeps
+            // seeing the file it opened and pending ids are checked against the live set
+            reader = Files.newBufferedReader(log, StandardCharsets.UTF_8);
+        }
+        int count = 0;
+        try {
+            String line;
+            while (count < limit && (line = reader.readLine()) != null) {
+                final Record record = parse(line);
+                if (record != null && ADD.equals(record.op) && isDue(record.id, now)) {
+                    consumer.accept(new Record(ADD, record.id, urls.decode(record.url), record.payload, record.time));
+                    count = count + 1;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return count;
+    }
+
+    private synchronized boolean isDue(String id, long now) {
+        if (!pending.containsKey(id) || inFlight.contains(id)) {
+            return false;
+        }
+        final Long queuedAt = queued.get(id);
+        if (queuedAt != null && now - queuedAt < QUEUED_TIMEOUT_MILLIS) {
+            return false;
+        }
+        final Failures failure = failures.get(id);
+        return failure == null || failure.nextAttempt <= now;
+    }
+
+    /**
+     * @return replayed messages waiting in the dispatcher
+     */
+    int getQueuedCount() {
+        return queued.size();
+    }
+
+    private void open() throws IOException {
+        if (channel != null) {
+            return;
+        }
+        Files.createDirectories(directory);
+        if (Files.exists(log)) {
+            try (BufferedReader reader = Files.newBufferedReader(log, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final Record record = parse(line);
+                    if (record == null) {
+                        continue;
+                    }
+                    if (ADD.equals(record.op)) {
+                        // records written before the time was stored count from now
+                        pending.put(record.id, record.time > 0 ? record.time : System.currentTimeMillis());
+                    } else if (ACK.equals(record.op) && pending.remove(record.id) != null) {
+                        acks = acks + 1;
+                    }
+                }
+            }
+        }
+        channel = openLog();
+        syncedPosition = channel.size();
+    }
+
+    /**
+     * Opens the log for writing at its end. A record torn by a crash is cut off first, the next record would
+     * otherwise be written onto the end of it and be unreadable as well.
+     */
+    private FileChannel openLog() throws IOException {
+        final FileChannel opened = FileChannel.open(log, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final long end = endOfLastRecord(opened);
+            if (end < opened.size()) {
+                LOG.warning("Cutting off " + (opened.size() - end) + " bytes of a slack notification torn by a crash from " + log);
+                opened.truncate(end);
+                opened.force(false);
+            }
+            opened.position(end);
+            return opened;
+        } catch (IOException e) {
+            opened.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the position just after the last line break, 0 if there is none
+     */
+    private static long endOfLastRecord(FileChannel channel) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long end = channel.size();
+        while (end > 0) {
+            final long start = Math.max(0, end - buffer.capacity());
+            buffer.clear();
+            buffer.limit((int) (end - start));
+            while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) >= 0) {
+                // read the whole chunk
+            }
+            for (int i = buffer.position() - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    private void openQuietly() {
+        try {
+            open();
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to open the slack notification outbox", e);
+        }
+    }
+
+    private void write(Record record) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap((gson.toJson(record) + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Group commit: whoever gets the lock first forces everything written so far, writers that were waiting
+     * behind it usually find their record already on disk.
+     */
+    private void sync(long position) throws IOException {
+        synchronized (syncLock) {
+            if (syncedPosition >= position) {
+                return;
+            }
+            final FileChannel target;
+            final long end;
+            synchronized (this) {
+                target = channel;
+                end = channel.position();
+            }
+            target.force(false);
+            synchronized (this) {
+                if (target == channel) {
+                    syncedPosition = Math.max(syncedPosition, end);
+                }
+            }
+        }
+    }
+
+    /**
+     * Rewrites the log with only the pending messages, streaming it so the payloads are never all in memory.
+     */
+    private void compact() throws IOException {
+        final Path compacted = directory.resolve(LOG_FILE + ".tmp");
+        final Set<String> written = new HashSet<>();
+        try (BufferedReader reader = Files.newBufferedReader(log, StandardCharsets.UTF_8);
+             BufferedWriter writer = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final Record record = parse(line);
+                if (record != null && ADD.equals(record.op) && pending.containsKey(record.id) && written.add(record.id)) {
+                    writer.write(line);
+                    writer.newLine();
+                }
+            }
+        }
+        try (FileChannel compactedChannel = FileChannel.open(compacted, StandardOpenOption.WRITE)) {
+            compactedChannel.force(true);
+        }
+        channel.close();
+        Files.move(compacted, log, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = openLog();
+        syncedPosition = channel.size();
+        acks = 0;
+    }
+
+    private Record parse(String line) {
+        try {
+            final Record record = gson.fromJson(line, Record.class);
+            return record == null || record.id == null ? null : record;
+        } catch (JsonParseException e) {
+            // a record torn by a crash mid write, it was never acknowledged to the caller
+            return null;
+        }
+    }
+
+    /**
+     * Queues the next page of pending messages that are due for delivery, only as many as the dispatcher has room
+     * for so replay never blocks or fills the queue builds post to. The rest follows in later runs.
+     *
+     * @return the number of messages queued
+     */
+    static int redeliver(NotificationOutbox outbox) throws IOException {
+        final CucumberSlack.CucumberSlackDescriptor descriptor = CucumberSlack.get();
+        final String jenkinsUrl = JenkinsLocationConfiguration.get().getUrl();
+        final SlackNotificationDispatcher dispatcher = descriptor.getDispatcher();
+        final int room = Math.min(REPLAY_PAGE - outbox.getQueuedCount(), dispatcher.getRemainingCapacity());
+        if (room <= 0) {
+            return 0;
+        }
+        final long now = System.currentTimeMillis();
+        return outbox.replay(room, now, record -> {
+            final SlackClient client = new SlackClient(jenkinsUrl, record.url, false, descriptor.getTransport());
+            outbox.queued.put(record.id, now);
+            dispatcher.dispatch("outbox " + record.id, () -> outbox.deliver(record.id, () -> client.postToSlack(record.payload)));
+        });
+    }
+
+    /**
+     * Hands the first page of the replay to a timer thread, startup does not wait for slack or the dispatcher.
+     */
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void replayOnStartup() {
+        final NotificationOutbox outbox = ExtensionList.lookup(NotificationOutbox.class).get(NotificationOutbox.class);
+        if (outbox == null) {
+            return;
+        }
+        Timer.get().submit(() -> {
+            try {
+                final int replayed = redeliver(outbox);
+                if (replayed > 0) {
+                    LOG.info("Replaying " + replayed + " of " + outbox.getPendingCount() + " slack notifications from the outbox");
+                }
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Unable to replay the slack notification outbox", e);
+            }
+        });
+    }
+
+    /**
+     * Retries messages that could not be delivered, e.g. because slack was unavailable. It runs every minute so a
+     * large outbox drains page by page, a message that failed waits longer after each attempt.
+     */
+    @Extension
+    public static class Redelivery extends AsyncPeriodicWork {
+
+        public Redelivery() {
+            super("Cucumber Slack outbox redelivery");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return TimeUnit.MINUTES.toMillis(1);
+        }
+
+        @Override
+        protected void execute(TaskListener listener) throws IOException {
+            final NotificationOutbox outbox = get();
+            if (outbox.getPendingCount() > 0) {
+                listener.getLogger().println("Redelivering " + redeliver(outbox) + " of " + outbox.getPendingCount()
+                        + " slack notifications");
+            }
+        }
+    }
+
+    /**
+     * One line of the outbox log.
+     */
+    public static final class Record {
+        private final String op;
+        private final String id;
+        private final String url;
+        private final String payload;
+        // when the message was added, in millis since the epoch
+        private final long time;
+
+        Record(String op, String id, String url, String payload, long time) {
+            this.op = op;
+            this.id = id;
+            this.url = url;
+            this.payload = payload;
+            this.time = time;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getPayload() {
+            return payload;
+        }
+    }
+
+    /**
+     * How webhook urls are stored in the log.
+     */
+    interface UrlCodec {
+
+        UrlCodec SECRET = new UrlCodec() {
+            @Override
+            public String encode(String url) {
+                return Secret.fromString(url).getEncryptedValue();
+            }
+
+            @Override
+            public String decode(String stored) {
+                final Secret secret = Secret.decrypt(stored);
+                // records written before urls were encrypted hold the url itself
+                return secret == null ? stored : secret.getPlainText();
+            }
+        };
+
+        String encode(String url);
+
+        String decode(String stored);
+    }
+
+    /**
+     * Failed deliveries of a pending message since the controller started.
+     */
+    private static final class Failures {
+        private int attempts;
+        private long nextAttempt;
+
+        /**
+         * @return the number of attempts that failed so far
+         */
+        int record(RuntimeException e, long now) {
+            if (e.getCause() instanceof SlackCircuitBreaker.OpenException) {
+                // nothing was posted, only wait for the circuit
+                nextAttempt = now + FIRST_RETRY_MILLIS;
+                return attempts;
+            }
+            attempts = attempts + 1;
+            nextAttempt = now + Math.min(MAX_RETRY_MILLIS, FIRST_RETRY_MILLIS << Math.min(attempts - 1, 20));
+            return attempts;
+        }
+    }
+}
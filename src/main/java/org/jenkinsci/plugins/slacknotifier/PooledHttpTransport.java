@@ -0,0 +1,132 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.apache.commons.httpclient.methods.StringRequestEntity;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Commons HttpClient transport backed by a shared connection pool, so keep-alive connections (and their TLS
+ * sessions) are reused between messages and a stalled endpoint is bounded by the configured timeouts.
+ */
+public class PooledHttpTransport implements SlackClient.Transport {
+
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+    public static final int DEFAULT_READ_TIMEOUT = 30000;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 4;
+
+    private static final String ENCODING = "UTF-8";
+    private static final String CONTENT_TYPE = "application/json";
+
+    private static final PooledHttpTransport SHARED =
+            new PooledHttpTransport(DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT, DEFAULT_MAX_CONNECTIONS_PER_HOST);
+
+    private final MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
+    private final HttpClient http = new HttpClient(connectionManager);
+
+    public PooledHttpTransport(int connectTimeoutMillis, int readTimeoutMillis, int maxConnectionsPerHost) {
+        configure(connectTimeoutMillis, readTimeoutMillis, maxConnectionsPerHost);
+    }
+
+    /**
+     * @return the controller wide pool used for webhook posts
+     */
+    public static PooledHttpTransport shared() {
+        return SHARED;
+    }
+
+    public void configure(int connectTimeoutMillis, int readTimeoutMillis, int maxConnectionsPerHost) {
+        final HttpConnectionManagerParams params = connectionManager.getParams();
+        params.setConnectionTimeout(connectTimeoutMillis);
+        params.setSoTimeout(readTimeoutMillis);
+        params.setDefaultMaxConnectionsPerHost(maxConnectionsPerHost);
+        params.setMaxTotalConnections(Math.max(maxConnectionsPerHost, params.getMaxTotalConnections()));
+        params.setStaleCheckingEnabled(true);
+    }
+
+    @Override
+    public SlackResponse post(String url, String json) throws IOException {
+        return post(url, new StringRequestEntity(json, CONTENT_TYPE, ENCODING), null);
+    }
+
+    @Override
+    public SlackResponse post(String url, String json, String authorization) throws IOException {
+        return post(url, new StringRequestEntity(json, CONTENT_TYPE, ENCODING), authorization);
+    }
+
+    /**
+     * Writes the message into the request body as it is rendered, sent chunked as its length is not known upfront.
+     */
+    @Override
+    public SlackResponse post(String url, SlackClient.Payload payload) throws IOException {
+        return post(url, new PayloadRequestEntity(payload), null);
+    }
+
+    private SlackResponse post(String url, RequestEntity entity, String authorization) throws IOException {
+        final PostMethod postMethod = new PostMethod(url);
+        try {
+            postMethod.setRequestEntity(entity);
+            if (authorization != null) {
+                postMethod.setRequestHeader("Authorization", authorization);
+            }
+            final int status = http.executeMethod(postMethod);
+            final Header retryAfter = postMethod.getResponseHeader("Retry-After");
+            // the body has to be consumed for the connection to be handed back to the pool
+            final String body = postMethod.getResponseBodyAsString();
+            return new SlackResponse(status, retryAfter == null ? null : retryAfter.getValue(), body);
+        } finally {
+            postMethod.releaseConnection();
+        }
+    }
+
+    /**
+     * Closes connections that have not been used for the given time.
+     */
+    public void closeIdleConnections(long idleTimeoutMillis) {
+        connectionManager.closeIdleConnections(idleTimeoutMillis);
+    }
+
+    public void shutdown() {
+        connectionManager.shutdown();
+    }
+
+    private static final class PayloadRequestEntity implements RequestEntity {
+        private final SlackClient.Payload payload;
+
+        PayloadRequestEntity(SlackClient.Payload payload) {
+            this.payload = payload;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public void writeRequest(OutputStream out) throws IOException {
+            final Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            payload.writeTo(writer);
+            // flushed into the request, closing it is up to HttpClient
+            writer.flush();
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public String getContentType() {
+            return CONTENT_TYPE + "; charset=" + ENCODING;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Identifies the report(s) matching a path or Ant glob by path, size and modification time, and optionally by
+ * content, without parsing them. Used as the key of the {@link CucumberResultCache}.
+ */
+class ReportFingerprintCallable extends MasterToSlaveFileCallable<String> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String json;
+    private final boolean hashContent;
+
+    ReportFingerprintCallable(String json, boolean hashContent) {
+        this.json = json;
+        this.hashContent = hashContent;
+    }
+
+    @Override
+    public String invoke(File workspace, VirtualChannel channel) throws IOException, InterruptedException {
+        final String[] reports;
+        if (CucumberReportCallable.isGlob(json)) {
+            reports = Util.createFileSet(workspace, json).getDirectoryScanner().getIncludedFiles();
+            Arrays.sort(reports);
+        } else {
+            reports = new String[]{json};
+        }
+
+        final MessageDigest fingerprint = sha256();
+        for (String report : reports) {
+            final File file = new File(workspace, report);
+            final String entry = report + '\t' + file.length() + '\t' + file.lastModified() + '\t'
+                    + (hashContent ? hash(file) : "") + '\n';
+            fingerprint.update(entry.getBytes(StandardCharsets.UTF_8));
+        }
+        return Util.toHexString(fingerprint.digest());
+    }
+
+    private static String hash(File file) throws IOException {
+        final MessageDigest digest = sha256();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file.toPath()), digest)) {
+            final byte[] buffer = new byte[64 * 1024];
+            while (in.read(buffer) != -1) {
+                // only digesting
+            }
+        }
+        return Util.toHexString(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Serializable;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Running totals of a cucumber report that is still being written, either a JSON array of features or a Cucumber
+ * Messages NDJSON stream. Each {@link #advance(File)} continues where the previous one stopped: bytes that were
+ * counted are never read again, and a feature or line that is only partly written is picked up once it is
+ * complete.
+ */
+public class ReportTail implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    enum Format {
+        JSON,
+        NDJSON
+    }
+
+    private Format format;
+    // start of the first feature or line that has not been counted yet
+    private long offset;
+    // how far the feature or line starting at offset has been scanned, and the scanner state there
+    private long scanned;
+    private int depth;
+    private boolean inString;
+    private boolean escaped;
+    private boolean finished;
+
+    private int scenarios;
+    private int failed;
+    // NDJSON test cases that are running and had a step that did not pass
+    private final Set<String> failing = new HashSet<>();
+
+    public int getScenarios() {
+        return scenarios;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public int getPassPercentage() {
+        return FeatureTally.percentage(scenarios, failed);
+    }
+
+    /**
+     * @return bytes of the report that have been counted
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return true once the closing bracket of a JSON report has been read
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return true if at least {@code minScenarios} scenarios ran and at least {@code failurePercent} of them failed
+     */
+    public boolean exceeds(int failurePercent, int minScenarios) {
+        return scenarios > 0 && scenarios >= minScenarios && (long) failed * 100 >= (long) failurePercent * scenarios;
+    }
+
+    /**
+     * Counts the scenarios written since the last call. The report is read once, forward from the first byte that
+     * has not been counted, and each complete feature or line is parsed from memory.
+     *
+     * @return the number of bytes counted
+     */
+    public long advance(File report) throws IOException {
+        if (!report.isFile() || finished) {
+            return 0;
+        }
+        final long start = offset;
+        try (FileChannel channel = FileChannel.open(report.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < scanned) {
+                throw new IOException(report + " was truncated while it was being read");
+            }
+            final InputStream in = new BufferedInputStream(Channels.newInputStream(channel.position(offset)), BUFFER_SIZE);
+            final Pending pending = new Pending();
+            if (format == null && !detectFormat(in, pending)) {
+                return 0;
+            }
+            // the part of the feature or line at the offset that an earlier call scanned
+            for (long n = scanned - offset - pending.size(); n > 0; n--) {
+                final int b = in.read();
+                if (b == -1) {
+                    throw new IOException(report + " was truncated while it was being read");
+                }
+                pending.write(b);
+            }
+            while (!finished && scan(in, pending)) {
+                count(pending);
+            }
+        }
+        return offset - start;
+    }
+
+    private boolean detectFormat(InputStream in, Pending pending) throws IOException {
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '[') {
+                format = Format.JSON;
+                offset = offset + 1;
+                scanned = offset;
+                return true;
+            }
+            if (b == '{') {
+                format = Format.NDJSON;
+                pending.write(b);
+                scanned = offset + 1;
+                return true;
+            }
+            if (!Character.isWhitespace(b)) {
+                throw new IOException("Not a cucumber report, it starts with '" + (char) b + "'");
+            }
+            offset = offset + 1;
+        }
+        return false;
+    }
+
+    /**
+     * Scans on from where the last scan stopped until the feature or line at the offset is complete, keeping its
+     * bytes.
+     *
+     * @return true if it is complete, false if the rest has not been written yet
+     */
+    private boolean scan(InputStream in, Pending pending) throws IOException {
+        int b;
+        while ((b = in.read()) != -1) {
+            scanned = scanned + 1;
+            if (format == Format.NDJSON) {
+                pending.write(b);
+                if (b == '\n') {
+                    return true;
+                }
+                continue;
+            }
+            if (depth == 0) {
+                // between features
+                if (b == '{') {
+                    offset = scanned - 1;
+                    depth = 1;
+                    pending.write(b);
+                } else if (b == ']') {
+                    offset = scanned;
+                    finished = true;
+                    return false;
+                } else if (b == ',' || Character.isWhitespace(b)) {
+                    offset = scanned;
+                } else {
+                    throw new IOException("Unexpected '" + (char) b + "' between features at byte " + (scanned - 1));
+                }
+                continue;
+            }
+            pending.write(b);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (b == '\\') {
+                    escaped = true;
+                } else if (b == '"') {
+                    inString = false;
+                }
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == '{' || b == '[') {
+                depth = depth + 1;
+            } else if (b == '}' || b == ']') {
+                depth = depth - 1;
+                if (depth == 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Counts the complete feature or line that was scanned.
+     */
+    private void count(Pending pending) throws IOException {
+        final JsonReader reader = new JsonReader(new InputStreamReader(pending.toInputStream(), StandardCharsets.UTF_8));
+        if (format == Format.JSON) {
+            final FeatureTally feature = new CucumberReportParser(false).readFeature(reader);
+            scenarios = scenarios + feature.getScenarios();
+            failed = failed + feature.getFailed();
+        } else if (pending.size() > 1) {
+            readEnvelope(reader);
+        }
+        offset = scanned;
+        pending.reset();
+    }
+
+    private void readEnvelope(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "testStepFinished":
+                    readTestStepFinished(reader);
+                    break;
+                case "testCaseFinished":
+                    readTestCaseFinished(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private void readTestStepFinished(JsonReader reader) throws IOException {
+        String testCaseStartedId = null;
+        String status = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if (name.equals("testCaseStartedId")) {
+                testCaseStartedId = reader.nextString();
+            } else if (name.equals("testStepResult") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (reader.nextName().equals("status")) {
+                        status = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (testCaseStartedId != null && !"PASSED".equalsIgnoreCase(status)) {
+            failing.add(testCaseStartedId);
+        }
+    }
+
+    private void readTestCaseFinished(JsonReader reader) throws IOException {
+        String testCaseStartedId = null;
+        boolean willBeRetried = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if (name.equals("testCaseStartedId")) {
+                testCaseStartedId = reader.nextString();
+            } else if (name.equals("willBeRetried")) {
+                willBeRetried = reader.nextBoolean();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        final boolean failedCase = failing.remove(testCaseStartedId);
+        // a retried attempt is only counted once its last attempt has finished
+        if (!willBeRetried) {
+            scenarios = scenarios + 1;
+            if (failedCase) {
+                failed = failed + 1;
+            }
+        }
+    }
+
+    /**
+     * @param alert why the run is flagged, e.g. a failure threshold that was passed, null for a plain progress update
+     */
+    public String toSlackMessage(String jobName, int buildNumber, String buildUrl, String alert) {
+        final StringWriter message = new StringWriter();
+        try (JsonWriter json = new JsonWriter(message)) {
+            final StringBuilder text = new StringBuilder();
+            if (alert != null) {
+                text.append(alert).append('\n');
+            }
+            text.append(finished ? "Finished" : "Running").append(": Scenarios: ").append(scenarios)
+                    .append(", Failed: ").append(failed)
+                    .append(", Build: <").append(buildUrl).append('|').append(buildNumber).append('>');
+            SlackMessageLayout.begin(json, text.toString(), getPassPercentage());
+            json.beginObject();
+            json.name("title").value("Pass %");
+            json.name("value").value(SlackMessageLayout.percentage(getPassPercentage()));
+            json.name("short").value(true);
+            json.endObject();
+            SlackMessageLayout.end(json, getPassPercentage(), jobName);
+        } catch (IOException e) {
+            throw new IllegalStateException("StringWriter does not throw", e);
+        }
+        return message.toString();
+    }
+
+    /**
+     * Bytes of the feature or line at the offset, only kept while a call is scanning it.
+     */
+    private static final class Pending extends ByteArrayOutputStream {
+
+        Pending() {
+            super(1024);
+        }
+
+        InputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Counts what was added to a report that is still being written, where it lives. The totals travel to the agent
+ * and back with every call, the report itself never leaves it.
+ */
+class ReportTailCallable extends MasterToSlaveFileCallable<ReportTail> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String json;
+    private final ReportTail tail;
+
+    ReportTailCallable(String json, ReportTail tail) {
+        this.json = json;
+        this.tail = tail;
+    }
+
+    @Override
+    public ReportTail invoke(File workspace, VirtualChannel channel) throws IOException {
+        tail.advance(new File(workspace, json));
+        return tail;
+    }
+}
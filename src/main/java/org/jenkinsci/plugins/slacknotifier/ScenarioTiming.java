@@ -0,0 +1,44 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import java.io.Serializable;
+import java.util.Comparator;
+
+/**
+ * How long one scenario took, the sum of its step durations including the background that ran before it.
+ */
+public final class ScenarioTiming implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    static final Comparator<ScenarioTiming> FASTEST_FIRST = Comparator.comparingLong(ScenarioTiming::getNanos);
+
+    private final String feature;
+    private final String scenario;
+    private final long nanos;
+
+    public ScenarioTiming(String feature, String scenario, long nanos) {
+        this.feature = feature;
+        this.scenario = scenario;
+        this.nanos = nanos;
+    }
+
+    public String getFeature() {
+        return feature;
+    }
+
+    public String getScenario() {
+        return scenario;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    ScenarioTiming withFeature(String feature) {
+        return new ScenarioTiming(feature, scenario, nanos);
+    }
+
+    public String toString() {
+        return feature + " / " + scenario + "=" + nanos;
+    }
+}
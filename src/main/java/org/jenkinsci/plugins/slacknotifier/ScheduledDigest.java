@@ -0,0 +1,275 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import com.google.gson.stream.JsonWriter;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.PeriodicWork;
+import hudson.scheduler.CronTabList;
+import jenkins.model.JenkinsLocationConfiguration;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.GregorianCalendar;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects the results of jobs that opted into the scheduled digest, per channel and job, and posts one message per
+ * channel on the configured schedule listing the worst jobs and the overall pass rate. Only a few counters are kept
+ * per job, never the results themselves. The aggregate is bounded: a channel keeps the {@link #MAX_JOBS} jobs that
+ * reported last, and results for more than {@link #MAX_TARGETS} channels are dropped.
+ * <p>
+ * The aggregate lives in memory only. Results collected since the last digest are lost when the controller restarts.
+ */
+@Extension
+public class ScheduledDigest {
+
+    private static final Logger LOG = Logger.getLogger(ScheduledDigest.class.getName());
+
+    static final int MAX_JOBS = 500;
+    static final int MAX_TARGETS = 100;
+    public static final int DEFAULT_WORST_JOBS = 10;
+
+    private final Map<String, Map<String, JobTally>> targets = new LinkedHashMap<>();
+    private long dropped;
+
+    public static ScheduledDigest get() {
+        return ExtensionList.lookupSingleton(ScheduledDigest.class);
+    }
+
+    /**
+     * Adds a build's result to the next digest of the channel or webhook.
+     *
+     * @param job   full name of the job, results of the same job are combined
+     * @param title how the job is shown in the digest
+     * @param url   absolute url of the job
+     */
+    public synchronized void record(String target, String job, String title, String url, CucumberResult result) {
+        Map<String, JobTally> jobs = targets.get(target);
+        if (jobs == null) {
+            if (targets.size() >= MAX_TARGETS) {
+                dropped = dropped + 1;
+                LOG.warning("Not adding " + job + " to the digest of " + SlackFanOut.describe(target) + ", digests are already collected for "
+                        + MAX_TARGETS + " channels");
+                return;
+            }
+            jobs = new LinkedHashMap<>();
+            targets.put(target, jobs);
+        }
+        // moved to the end, so the job that reported longest ago is evicted first
+        JobTally tally = jobs.remove(job);
+        if (tally == null) {
+            tally = new JobTally(title, url);
+            if (jobs.size() >= MAX_JOBS) {
+                final Iterator<JobTally> eldest = jobs.values().iterator();
+                eldest.next();
+                eldest.remove();
+                dropped = dropped + 1;
+            }
+        }
+        tally.add(result.getTotalScenarios(), result.getPassPercentage());
+        jobs.put(job, tally);
+    }
+
+    /**
+     * @return jobs waiting for the next digest, over all channels
+     */
+    public synchronized int getJobCount() {
+        int count = 0;
+        for (Map<String, JobTally> jobs : targets.values()) {
+            count = count + jobs.size();
+        }
+        return count;
+    }
+
+    /**
+     * @return results that were not added or were evicted because the aggregate was full
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Takes the collected results, the next digest starts empty.
+     *
+     * @return the jobs of each channel or webhook
+     */
+    synchronized Map<String, List<JobTally>> drain() {
+        final Map<String, List<JobTally>> drained = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, JobTally>> entry : targets.entrySet()) {
+            drained.put(entry.getKey(), new ArrayList<>(entry.getValue().values()));
+        }
+        targets.clear();
+        return drained;
+    }
+
+    /**
+     * Hands a digest for every channel and webhook that has results to the dispatcher, the timer thread does not
+     * wait for slack. Digests to webhooks are spooled to the outbox first when notifications are persisted, so they
+     * are redelivered if slack is down. A channel that cannot be reached does not keep the others from getting
+     * theirs.
+     */
+    void post(CucumberSlack.CucumberSlackDescriptor descriptor) {
+        final Map<String, List<JobTally>> drained = drain();
+        if (drained.isEmpty()) {
+            return;
+        }
+        final String jenkinsUrl = JenkinsLocationConfiguration.get().getUrl();
+        final NotificationOutbox outbox = descriptor.isPersistNotifications() ? NotificationOutbox.get() : null;
+        final SlackNotificationDispatcher dispatcher = descriptor.getDispatcher();
+        for (Map.Entry<String, List<JobTally>> entry : drained.entrySet()) {
+            final String target = entry.getKey();
+            final String message = toSlackMessage(entry.getValue(), descriptor.getDigestWorstJobs());
+            final String description = "Cucumber digest of " + entry.getValue().size() + " jobs";
+            try {
+                if (SlackWebApiClient.isChannel(target)) {
+                    final SlackWebApiClient api = descriptor.getWebApiClient();
+                    if (api == null) {
+                        throw new IllegalStateException("A bot token has to be configured to post to slack channels");
+                    }
+                    dispatcher.dispatch(description + " to " + target, () -> api.postMessage(target, message));
+                } else {
+                    new SlackClient(jenkinsUrl, target, false, descriptor.getTransport()).sendMessage(message, description, outbox, dispatcher);
+                }
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "Unable to post the cucumber digest to " + SlackFanOut.describe(target), e);
+            }
+        }
+    }
+
+    /**
+     * @param worstJobs jobs listed, those with the lowest pass percentage since the last digest
+     */
+    static String toSlackMessage(List<JobTally> jobs, int worstJobs) {
+        long scenarios = 0;
+        long passed = 0;
+        int builds = 0;
+        for (JobTally job : jobs) {
+            scenarios = scenarios + job.scenarios;
+            passed = passed + job.passed;
+            builds = builds + job.builds;
+        }
+        final int passPercentage = scenarios == 0 ? 100 : (int) (passed / scenarios);
+
+        final List<JobTally> worst = new ArrayList<>(jobs);
+        worst.sort(Comparator.comparingInt(JobTally::getPassPercentage)
+                .thenComparing(Comparator.comparingLong(JobTally::getScenarios).reversed()));
+        final List<JobTally> listed = worst.subList(0, Math.min(Math.max(worstJobs, 0), worst.size()));
+
+        final StringWriter message = new StringWriter();
+        try (JsonWriter json = new JsonWriter(message)) {
+            SlackMessageLayout.begin(json, "Cucumber digest: " + jobs.size() + " jobs, " + builds + " builds, Scenarios: " + scenarios,
+                    passPercentage);
+            SlackMessageLayout.titles(json, "Worst Jobs", "Pass %");
+            for (JobTally job : listed) {
+                SlackMessageLayout.row(json, "<" + job.url + "|" + job.title + "> (" + job.builds + (job.builds == 1 ? " build)" : " builds)"),
+                        SlackMessageLayout.percentage(job.getPassPercentage())
+                                + (job.lowest < job.getPassPercentage() ? ", lowest " + job.lowest + " %" : ""));
+            }
+            if (listed.size() < jobs.size()) {
+                final int more = jobs.size() - listed.size();
+                SlackMessageLayout.row(json, more + (more == 1 ? " more job" : " more jobs"), "");
+            }
+            SlackMessageLayout.total(json, "All Jobs", passPercentage);
+            SlackMessageLayout.end(json, passPercentage, "Cucumber Digest");
+        } catch (IOException e) {
+            throw new IllegalStateException("StringWriter does not throw", e);
+        }
+        return message.toString();
+    }
+
+    /**
+     * What a job's builds added up to since the last digest.
+     */
+    static final class JobTally {
+        private final String title;
+        private final String url;
+        private int builds;
+        private long scenarios;
+        // scenarios weighted by their build's pass percentage
+        private long passed;
+        private int lowest = 100;
+
+        JobTally(String title, String url) {
+            this.title = title;
+            this.url = url;
+        }
+
+        void add(int totalScenarios, int passPercentage) {
+            builds = builds + 1;
+            scenarios = scenarios + totalScenarios;
+            passed = passed + (long) totalScenarios * passPercentage;
+            lowest = Math.min(lowest, passPercentage);
+        }
+
+        String getTitle() {
+            return title;
+        }
+
+        int getBuilds() {
+            return builds;
+        }
+
+        long getScenarios() {
+            return scenarios;
+        }
+
+        /**
+         * @return pass percentage over all builds, weighted by the number of scenarios each build ran
+         */
+        int getPassPercentage() {
+            return scenarios == 0 ? 100 : (int) (passed / scenarios);
+        }
+    }
+
+    /**
+     * Checks the digest schedule once a minute, at the start of the minute like build triggers do.
+     */
+    @Extension
+    public static class Poster extends PeriodicWork {
+
+        private long lastMinute;
+
+        @Override
+        public long getRecurrencePeriod() {
+            return MIN;
+        }
+
+        @Override
+        public long getInitialDelay() {
+            return MIN - Calendar.getInstance().get(Calendar.SECOND) * 1000L;
+        }
+
+        @Override
+        protected void doRun() {
+            final CucumberSlack.CucumberSlackDescriptor descriptor = CucumberSlack.get();
+            final String schedule = descriptor.getDigestSchedule();
+            if (schedule == null) {
+                return;
+            }
+            final Calendar now = new GregorianCalendar();
+            // a late run must not post a second digest in the same minute
+            final long minute = now.getTimeInMillis() / MIN;
+            if (minute == lastMinute) {
+                return;
+            }
+            lastMinute = minute;
+            try {
+                if (!CronTabList.create(schedule).check(now)) {
+                    return;
+                }
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Invalid cucumber digest schedule '" + schedule + "'", e);
+                return;
+            }
+            get().post(descriptor);
+        }
+    }
+}
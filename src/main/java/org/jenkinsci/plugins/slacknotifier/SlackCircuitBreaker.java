@@ -0,0 +1,240 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+/**
+ * Circuit breakers per webhook, so that during a slack or proxy outage messages fail at once instead of every build
+ * waiting for a connect or read timeout. After {@code failureThreshold} deliveries in a row failed the circuit opens
+ * and messages are rejected without a network call. Once the probe interval is over a single message is let through
+ * as a probe (half open): if it is delivered the circuit closes, otherwise it opens again for another interval.
+ * <p>
+ * A delivery fails when the post throws or slack still answers 5xx after retries. Other answers, rate limiting and
+ * client errors included, show that slack is reachable.
+ */
+public class SlackCircuitBreaker {
+
+    private static final Logger LOG = Logger.getLogger(SlackCircuitBreaker.class.getName());
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final int DEFAULT_PROBE_INTERVAL = 60;
+
+    private static final SlackCircuitBreaker SHARED = new SlackCircuitBreaker(DEFAULT_FAILURE_THRESHOLD,
+            TimeUnit.SECONDS.toMillis(DEFAULT_PROBE_INTERVAL), System::nanoTime);
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final ConcurrentMap<String, Circuit> circuits = new ConcurrentHashMap<>();
+    private final LongSupplier clock;
+    private volatile int failureThreshold;
+    private volatile long probeIntervalNanos;
+
+    /**
+     * @param failureThreshold    deliveries in a row that have to fail to open a circuit, 0 to never open one
+     * @param probeIntervalMillis how long a circuit stays open before a probe is let through
+     * @param clock               nano time source
+     */
+    public SlackCircuitBreaker(int failureThreshold, long probeIntervalMillis, LongSupplier clock) {
+        this.clock = clock;
+        configure(failureThreshold, probeIntervalMillis);
+    }
+
+    public static SlackCircuitBreaker shared() {
+        return SHARED;
+    }
+
+    public void configure(int failureThreshold, long probeIntervalMillis) {
+        this.failureThreshold = Math.max(0, failureThreshold);
+        this.probeIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, probeIntervalMillis));
+        if (failureThreshold <= 0) {
+            circuits.clear();
+        }
+    }
+
+    /**
+     * Lets a delivery to the webhook through, as a probe if its circuit has been open for the probe interval.
+     *
+     * @throws OpenException if the circuit is open, or half open with a probe under way
+     */
+    public void acquire(String webhookUrl) throws OpenException {
+        if (failureThreshold > 0) {
+            circuit(webhookUrl).acquire(webhookUrl, clock.getAsLong(), probeIntervalNanos);
+        }
+    }
+
+    /**
+     * Records the outcome of a delivery let through by {@link #acquire(String)}.
+     *
+     * @param response slack's answer to the last attempt, null if the post threw
+     */
+    public void record(String webhookUrl, SlackResponse response) {
+        if (failureThreshold > 0) {
+            circuit(webhookUrl).record(webhookUrl, response != null && response.getStatus() < 500, clock.getAsLong(),
+                    failureThreshold);
+        }
+    }
+
+    /**
+     * Hands back a delivery that ended without an outcome, e.g. because it was interrupted.
+     */
+    public void release(String webhookUrl) {
+        final Circuit circuit = circuits.get(webhookUrl);
+        if (circuit != null) {
+            circuit.release();
+        }
+    }
+
+    public State getState(String webhookUrl) {
+        final Circuit circuit = circuits.get(webhookUrl);
+        return circuit == null ? State.CLOSED : circuit.getState();
+    }
+
+    /**
+     * @return the circuits that are not closed or have failures, for the global configuration page
+     */
+    public List<Status> getStatuses() {
+        final List<Status> statuses = new ArrayList<>();
+        final long now = clock.getAsLong();
+        for (Map.Entry<String, Circuit> entry : circuits.entrySet()) {
+            final Status status = entry.getValue().status(entry.getKey(), now, probeIntervalNanos);
+            if (status.getState() != State.CLOSED || status.getFailures() > 0) {
+                statuses.add(status);
+            }
+        }
+        return statuses;
+    }
+
+    private Circuit circuit(String webhookUrl) {
+        return circuits.computeIfAbsent(webhookUrl, url -> new Circuit());
+    }
+
+    /**
+     * @return the host and the end of the webhook, enough to tell webhooks apart without showing their secret
+     */
+    static String describe(String webhookUrl) {
+        final String host = SlackFanOut.describe(webhookUrl);
+        return webhookUrl.length() > 4 ? host + " …" + webhookUrl.substring(webhookUrl.length() - 4) : host;
+    }
+
+    private static final class Circuit {
+        private State state = State.CLOSED;
+        private int failures;
+        private long openedAt;
+        private boolean probing;
+
+        synchronized void acquire(String webhookUrl, long now, long probeIntervalNanos) throws OpenException {
+            if (state == State.CLOSED) {
+                return;
+            }
+            if (state == State.OPEN && now - openedAt >= probeIntervalNanos) {
+                state = State.HALF_OPEN;
+            }
+            if (state == State.HALF_OPEN && !probing) {
+                probing = true;
+                LOG.info("Probing " + describe(webhookUrl) + " after " + failures + " failed deliveries");
+                return;
+            }
+            throw new OpenException(webhookUrl, failures, TimeUnit.NANOSECONDS.toSeconds(
+                    Math.max(0, probeIntervalNanos - (now - openedAt))));
+        }
+
+        synchronized void record(String webhookUrl, boolean delivered, long now, int failureThreshold) {
+            probing = false;
+            if (delivered) {
+                if (state != State.CLOSED) {
+                    LOG.info("Closing the circuit of " + describe(webhookUrl) + ", slack is reachable again");
+                }
+                state = State.CLOSED;
+                failures = 0;
+                return;
+            }
+            failures = failures + 1;
+            if (state == State.HALF_OPEN || failures >= failureThreshold) {
+                if (state == State.CLOSED) {
+                    LOG.warning("Opening the circuit of " + describe(webhookUrl) + " after " + failures
+                            + " failed deliveries, messages are rejected until a probe gets through");
+                }
+                state = State.OPEN;
+                openedAt = now;
+            }
+        }
+
+        synchronized void release() {
+            probing = false;
+        }
+
+        synchronized State getState() {
+            return state;
+        }
+
+        synchronized Status status(String webhookUrl, long now, long probeIntervalNanos) {
+            final long probeIn = state == State.OPEN ? Math.max(0, probeIntervalNanos - (now - openedAt)) : 0;
+            return new Status(describe(webhookUrl), state, failures, TimeUnit.NANOSECONDS.toSeconds(probeIn));
+        }
+    }
+
+    /**
+     * State of a webhook's circuit at the time it was asked for.
+     */
+    public static final class Status {
+        private final String target;
+        private final State state;
+        private final int failures;
+        private final long probeInSeconds;
+
+        Status(String target, State state, int failures, long probeInSeconds) {
+            this.target = target;
+            this.state = state;
+            this.failures = failures;
+            this.probeInSeconds = probeInSeconds;
+        }
+
+        public String getTarget() {
+            return target;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        /**
+         * @return deliveries that failed in a row
+         */
+        public int getFailures() {
+            return failures;
+        }
+
+        /**
+         * @return seconds until the next probe, 0 unless the circuit is open
+         */
+        public long getProbeInSeconds() {
+            return probeInSeconds;
+        }
+    }
+
+    /**
+     * Thrown instead of posting while a webhook's circuit is open. It is an {@link IOException} so it takes the path
+     * of any other failed post, a message spooled to the outbox is kept there for redelivery.
+     */
+    public static final class OpenException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        OpenException(String webhookUrl, int failures, long probeInSeconds) {
+            super("Not posting to " + describe(webhookUrl) + ", its last " + failures
+                    + " deliveries failed, the next attempt is let through in " + probeInSeconds + " s");
+        }
+    }
+}
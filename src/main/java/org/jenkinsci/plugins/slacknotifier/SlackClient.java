@@ -1,41 +1,191 @@
 package org.jenkinsci.plugins.slacknotifier;
 
-import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.methods.PostMethod;
-import org.apache.commons.httpclient.methods.StringRequestEntity;
+import com.google.gson.internal.bind.JsonTreeReader;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
-import java.util.ArrayList;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
-import java.util.List;
+import java.util.function.LongSupplier;
 import java.util.logging.Logger;
 
 public class SlackClient {
 
     private static final Logger LOG = Logger.getLogger(SlackClient.class.getName());
 
-    private static final String ENCODING = "UTF-8";
-    private static final String CONTENT_TYPE = "application/json";
+    /**
+     * A message that is written straight into the request body instead of being rendered to a string first. It is
+     * written again for every attempt.
+     */
+    public interface Payload {
+
+        void writeTo(Writer writer) throws IOException;
+    }
+
+    /**
+     * Delivers a rendered message to a webhook.
+     */
+    public interface Transport {
+
+        SlackResponse post(String url, String json) throws IOException;
+
+        /**
+         * Posts a streamed message, by default by rendering it to a string first.
+         */
+        default SlackResponse post(String url, Payload payload) throws IOException {
+            final StringWriter json = new StringWriter();
+            payload.writeTo(json);
+            return post(url, json.toString());
+        }
+
+        /**
+         * Posts to a Slack Web API method with an {@code Authorization} header.
+         */
+        default SlackResponse post(String url, String json, String authorization) throws IOException {
+            throw new IOException(getClass().getSimpleName() + " does not support Slack Web API calls");
+        }
+    }
 
     private final String jenkinsUrl;
     private final String channelWebhookUrl;
     private final boolean hideSuccessfulResults;
+    private final Transport transport;
+    private final SlackRateLimiter rateLimiter;
+    private final SlackRetryPolicy retryPolicy;
+    private final SlackCircuitBreaker circuitBreaker;
 
     public SlackClient(String jenkinsUrl, String channelWebhookUrl, boolean hideSuccessfulResults) {
+        this(jenkinsUrl, channelWebhookUrl, hideSuccessfulResults, PooledHttpTransport.shared());
+    }
+
+    public SlackClient(String jenkinsUrl, String channelWebhookUrl, boolean hideSuccessfulResults, Transport transport) {
+        this(jenkinsUrl, channelWebhookUrl, hideSuccessfulResults, transport, SlackRateLimiter.shared(), SlackRetryPolicy.DEFAULT);
+    }
+
+    public SlackClient(String jenkinsUrl, String channelWebhookUrl, boolean hideSuccessfulResults, Transport transport,
+                       SlackRateLimiter rateLimiter, SlackRetryPolicy retryPolicy) {
+        this(jenkinsUrl, channelWebhookUrl, hideSuccessfulResults, transport, rateLimiter, retryPolicy, SlackCircuitBreaker.shared());
+    }
+
+    public SlackClient(String jenkinsUrl, String channelWebhookUrl, boolean hideSuccessfulResults, Transport transport,
+                       SlackRateLimiter rateLimiter, SlackRetryPolicy retryPolicy, SlackCircuitBreaker circuitBreaker) {
         this.jenkinsUrl = jenkinsUrl;
         this.channelWebhookUrl = channelWebhookUrl;
         this.hideSuccessfulResults = hideSuccessfulResults;
+        this.transport = transport;
+        this.rateLimiter = rateLimiter;
+        this.retryPolicy = retryPolicy;
+        this.circuitBreaker = circuitBreaker;
     }
 
     public void postToSlack(JsonElement results, final String jobName, final int buildNumber, final String extra) {
+        postToSlack(results == null ? null : processResults(results), jobName, buildNumber, extra);
+    }
+
+    public void postToSlack(CucumberResult results, final String jobName, final int buildNumber, final String extra) {
         LOG.info("Publishing test report to slack channelWebhookUrl: " + channelWebhookUrl);
-        CucumberResult result = results == null ? dummyResults() : processResults(results);
-        String json = result.toSlackMessage(jobName, buildNumber, jenkinsUrl, extra);
-        postToSlack(json);
+        postToSlack(toSlackPayload(results, jobName, buildNumber, extra, null, SlackMessageLimits.DEFAULT));
+    }
+
+    /**
+     * Renders the message on the calling thread and leaves the delivery to the dispatcher, so the caller does not
+     * wait for slack.
+     */
+    public void dispatchToSlack(CucumberResult results, final String jobName, final int buildNumber, final String extra,
+                                SlackNotificationDispatcher dispatcher) {
+        LOG.info("Queueing test report for slack channelWebhookUrl: " + channelWebhookUrl);
+        sendMessage(toSlackMessage(results, jobName, buildNumber, extra), jobName + " #" + buildNumber, null, dispatcher);
+    }
+
+    /**
+     * Spools the message to the outbox before delivering it, on the calling thread if no dispatcher is given. A
+     * failed delivery is not thrown, the message stays in the outbox and is delivered later.
+     *
+     * @throws RuntimeException if the message could not be written to the outbox
+     */
+    public void spoolToSlack(CucumberResult results, final String jobName, final int buildNumber, final String extra,
+                             NotificationOutbox outbox, SlackNotificationDispatcher dispatcher) {
+        LOG.info("Spooling test report for slack channelWebhookUrl: " + channelWebhookUrl);
+        sendMessage(toSlackMessage(results, jobName, buildNumber, extra), jobName + " #" + buildNumber, outbox, dispatcher);
+    }
+
+    /**
+     * Sends an already rendered message.
+     *
+     * @param description what is being sent, used for logging
+     * @param outbox      spools the message before delivery when not null
+     * @param dispatcher  delivers in the background when not null, otherwise delivery happens on the calling thread
+     */
+    public void sendMessage(final String json, final String description, final NotificationOutbox outbox, final SlackNotificationDispatcher dispatcher) {
+        final Runnable delivery;
+        if (outbox == null) {
+            delivery = () -> postToSlack(json);
+        } else {
+            final String id = NotificationOutbox.idempotencyKey(channelWebhookUrl, json);
+            try {
+                if (!outbox.add(id, channelWebhookUrl, json)) {
+                    LOG.info("Identical slack notification " + id + " is already waiting for delivery");
+                    return;
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Message could not be written to the outbox", e);
+            }
+            delivery = () -> outbox.deliver(id, () -> postToSlack(json));
+        }
+        if (dispatcher == null) {
+            delivery.run();
+        } else {
+            dispatcher.dispatch(description, delivery);
+        }
+    }
+
+    /**
+     * Sends a message that is rendered into the request body, for messages that are not spooled to the outbox.
+     *
+     * @param dispatcher delivers in the background when not null, otherwise delivery happens on the calling thread
+     */
+    public void sendMessage(final Payload payload, final String description, final SlackNotificationDispatcher dispatcher) {
+        if (dispatcher == null) {
+            postToSlack(payload);
+        } else {
+            dispatcher.dispatch(description, () -> postToSlack(payload));
+        }
+    }
+
+    public String getChannelWebhookUrl() {
+        return channelWebhookUrl;
+    }
+
+    public String toSlackMessage(CucumberResult results, final String jobName, final int buildNumber, final String extra) {
+        return toSlackMessage(results, jobName, buildNumber, extra, null);
+    }
+
+    public String toSlackMessage(CucumberResult results, final String jobName, final int buildNumber, final String extra,
+                                 final CucumberDelta delta) {
+        return toSlackMessage(results, jobName, buildNumber, extra, delta, SlackMessageLimits.DEFAULT);
+    }
+
+    public String toSlackMessage(CucumberResult results, final String jobName, final int buildNumber, final String extra,
+                                 final CucumberDelta delta, final SlackMessageLimits limits) {
+        CucumberResult result = results == null ? dummyResults() : results;
+        return result.toSlackMessage(jobName, buildNumber, jenkinsUrl, extra, delta, limits);
+    }
+
+    /**
+     * The message as a {@link Payload}. Every time it is written the time taken is recorded as render time, which
+     * here includes writing into the request body.
+     */
+    public Payload toSlackPayload(CucumberResult results, final String jobName, final int buildNumber, final String extra,
+                                  final CucumberDelta delta, final SlackMessageLimits limits) {
+        final CucumberResult result = results == null ? dummyResults() : results;
+        return writer -> {
+            final long start = System.nanoTime();
+            result.writeSlackMessage(writer, jobName, buildNumber, jenkinsUrl, extra, delta, limits);
+            CucumberSlackMetrics.shared().recordRender(System.nanoTime() - start);
+        };
     }
 
     private CucumberResult dummyResults() {
@@ -43,68 +193,177 @@ public class SlackClient {
     }
 
 
-    private void postToSlack(String json) {
+    void postToSlack(String json) {
         LOG.fine("Json being posted: " + json);
-        StringRequestEntity requestEntity = getStringRequestEntity(json);
-        PostMethod postMethod = new PostMethod(channelWebhookUrl);
-        postMethod.setRequestEntity(requestEntity);
-        postToSlack(postMethod);
+        final int payloadLength = json.getBytes(StandardCharsets.UTF_8).length;
+        postToSlack(() -> transport.post(channelWebhookUrl, json), () -> payloadLength);
     }
 
-    private void postToSlack(PostMethod postMethod) {
-        HttpClient http = new HttpClient();
+    void postToSlack(Payload payload) {
+        final CountingPayload counted = new CountingPayload(payload);
+        postToSlack(() -> transport.post(channelWebhookUrl, counted), counted::getBytes);
+    }
+
+    private void postToSlack(Attempt attempt, LongSupplier payloadBytes) {
+        final long start = System.nanoTime();
         try {
-            int status = http.executeMethod(postMethod);
-            if (status != 200) {
-                throw new RuntimeException("Received HTTP Status code [" + status + "] while posting to slack");
+            SlackResponse response = deliver(attempt, payloadBytes);
+            CucumberSlackMetrics.shared().recordDeliver(System.nanoTime() - start);
+            if (!response.isOk()) {
+                throw new StatusException(response.getStatus());
             }
         } catch (IOException e) {
             throw new RuntimeException("Message could not be posted", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while posting to slack", e);
         }
     }
 
-    public CucumberResult processResults(JsonElement resultElement) {
-        int totalScenarios = 0;
-        int passPercent = 0;
-        List<FeatureResult> results = new ArrayList<>();
-        JsonArray features = resultElement.getAsJsonArray();
-        int failedScenarios = 0;
-        for (JsonElement featureElement : features) {
-            JsonObject feature = featureElement.getAsJsonObject();
-            JsonArray elements = feature.get("elements").getAsJsonArray();
-            int scenariosTotal = 0;
-            int failed = 0;
-            for (JsonElement scenarioElement : elements) {
-                JsonObject scenario = scenarioElement.getAsJsonObject();
-                JsonArray steps = scenario.get("steps").getAsJsonArray();
-                if (scenario.get("type").getAsString().equalsIgnoreCase("scenario")){
-                    scenariosTotal = scenariosTotal + 1;
-                }
-                for (JsonElement stepElement : steps) {
-                    JsonObject step = stepElement.getAsJsonObject();
-                    String result = step.get("result").getAsJsonObject().get("status").getAsString();
-                    if (!result.equals("passed")) {
-                        failed = failed + 1;
-                        failedScenarios = failedScenarios + 1;
-                        break;
-                    }
+    SlackResponse deliver(String json) throws IOException, InterruptedException {
+        final int payloadLength = json.getBytes(StandardCharsets.UTF_8).length;
+        return deliver(() -> transport.post(channelWebhookUrl, json), () -> payloadLength);
+    }
+
+    /**
+     * Posts within the webhook's rate limit, retrying rate limited and server side failures.
+     *
+     * @return the response to the last attempt
+     */
+    private SlackResponse deliver(Attempt post, LongSupplier payloadBytes) throws IOException, InterruptedException {
+        return deliver(post, channelWebhookUrl, rateLimiter, retryPolicy, circuitBreaker, payloadBytes);
+    }
+
+    /**
+     * Posts within the rate limit of the given key, retrying rate limited and server side failures, unless the
+     * key's circuit is open.
+     *
+     * @return the response to the last attempt
+     * @throws SlackCircuitBreaker.OpenException without posting if the circuit is open
+     */
+    static SlackResponse deliver(Attempt post, String rateLimitKey, SlackRateLimiter rateLimiter, SlackRetryPolicy retryPolicy,
+                                 SlackCircuitBreaker circuitBreaker, LongSupplier payloadBytes) throws IOException, InterruptedException {
+        circuitBreaker.acquire(rateLimitKey);
+        SlackResponse response = null;
+        boolean interrupted = false;
+        try {
+            response = deliver(post, rateLimitKey, rateLimiter, retryPolicy, payloadBytes);
+            return response;
+        } catch (InterruptedException e) {
+            interrupted = true;
+            throw e;
+        } finally {
+            if (interrupted) {
+                circuitBreaker.release(rateLimitKey);
+            } else {
+                circuitBreaker.record(rateLimitKey, response);
+            }
+        }
+    }
+
+    private static SlackResponse deliver(Attempt post, String rateLimitKey, SlackRateLimiter rateLimiter, SlackRetryPolicy retryPolicy,
+                                         LongSupplier payloadBytes) throws IOException, InterruptedException {
+        final CucumberSlackMetrics metrics = CucumberSlackMetrics.shared();
+        for (int attempt = 0; ; attempt++) {
+            rateLimiter.acquire(rateLimitKey);
+            final SlackResponse response = post.post();
+            metrics.recordPost(payloadBytes.getAsLong(), response.getStatus());
+            if (response.isOk() || !retryPolicy.isRetryable(response) || attempt >= retryPolicy.getMaxRetries()) {
+                return response;
+            }
+            final long delay = retryPolicy.delayMillis(attempt, response);
+            if (delay < 0) {
+                // slack asked for a longer wait than we retry within: the message fails now (a spooled one stays in
+                // the outbox) and later messages to the key are held back as long as slack asked
+                final long retryAfter = SlackRetryPolicy.parseRetryAfter(response.getRetryAfter());
+                LOG.fine("Slack answered " + response + " with Retry-After of " + retryAfter + "ms, giving up");
+                if (response.getStatus() == 429) {
+                    rateLimiter.pause(rateLimitKey, retryAfter);
                 }
+                return response;
             }
-            totalScenarios = totalScenarios + scenariosTotal;
-            final int scenarioPassPercent = ((scenariosTotal - failed) * 100) / scenariosTotal;
-            if (scenarioPassPercent != 100 || !hideSuccessfulResults) {
-                results.add(new FeatureResult(feature.get("uri").getAsString(), feature.get("name").getAsString(), scenarioPassPercent));
+            metrics.recordRetry();
+            LOG.fine("Slack answered " + response + ", retrying in " + delay + "ms");
+            if (response.getStatus() == 429) {
+                // slack limits per webhook (or api method), so every message queued for it has to wait
+                rateLimiter.pause(rateLimitKey, delay);
+            } else {
+                Thread.sleep(delay);
             }
         }
-        passPercent = ((totalScenarios - failedScenarios) * 100) / totalScenarios;
-        return new CucumberResult(results, totalScenarios, passPercent);
     }
 
-    private StringRequestEntity getStringRequestEntity(String json) {
+    public CucumberResult processResults(Reader report) throws IOException {
+        return new CucumberReportParser(hideSuccessfulResults).parse(report);
+    }
+
+    /**
+     * Reads a report that is already parsed, with the same rules as {@link #processResults(Reader)}.
+     *
+     * @throws RuntimeException if the report is not a cucumber report
+     */
+    public CucumberResult processResults(JsonElement resultElement) {
         try {
-            return new StringRequestEntity(json, CONTENT_TYPE, ENCODING);
-        } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException(ENCODING + " encoding is not supported with [" + json + "]", e);
+            return new CucumberReportParser(hideSuccessfulResults).parse(new JsonTreeReader(resultElement));
+        } catch (IOException e) {
+            throw new RuntimeException("Cucumber report could not be read", e);
+        }
+    }
+
+    interface Attempt {
+        SlackResponse post() throws IOException;
+    }
+
+    /**
+     * Counts the UTF-8 bytes a streamed payload wrote on its last attempt.
+     */
+    private static final class CountingPayload implements Payload {
+        private final Payload payload;
+        private volatile long bytes;
+
+        CountingPayload(Payload payload) {
+            this.payload = payload;
+        }
+
+        @Override
+        public void writeTo(Writer writer) throws IOException {
+            final Utf8CountingWriter counting = new Utf8CountingWriter(writer);
+            payload.writeTo(counting);
+            bytes = counting.getBytes();
+        }
+
+        long getBytes() {
+            return bytes;
+        }
+    }
+
+    /**
+     * Slack answered a post with an error status, after any retries.
+     */
+    public static final class StatusException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        StatusException(int status) {
+            super("Received HTTP Status code [" + status + "] while posting to slack");
+            this.status = status;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        /**
+         * @return true if posting the same message again cannot succeed, e.g. an invalid payload or a revoked webhook
+         */
+        static boolean isPermanent(Throwable e) {
+            if (!(e instanceof StatusException)) {
+                return false;
+            }
+            final int status = ((StatusException) e).status;
+            return status >= 400 && status < 500 && status != 429;
         }
     }
 }
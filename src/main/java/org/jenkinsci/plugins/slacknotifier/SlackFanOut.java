@@ -0,0 +1,127 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Posts one rendered message to several webhooks at the same time, so a slow or failing webhook does not hold up
+ * the others.
+ */
+public final class SlackFanOut {
+
+    static final int MAX_THREADS = 16;
+
+    // when every thread is busy the caller posts itself instead of waiting for one
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(0, MAX_THREADS, 60L, TimeUnit.SECONDS,
+            new SynchronousQueue<>(), new NamingThreadFactory(new DaemonThreadFactory(), "CucumberSlackFanOut"),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+
+    private SlackFanOut() {
+    }
+
+    /**
+     * Splits a channel setting into its webhooks, which may be separated by commas or whitespace. Duplicates are
+     * only posted to once.
+     */
+    public static List<String> parseTargets(String channel) {
+        if (channel == null) {
+            return Collections.emptyList();
+        }
+        final Set<String> targets = new LinkedHashSet<>();
+        for (String target : channel.split("[,\\s]+")) {
+            if (!target.isEmpty()) {
+                targets.add(target);
+            }
+        }
+        return new ArrayList<>(targets);
+    }
+
+    /**
+     * @return the webhook without its secret path, for build logs
+     */
+    public static String describe(String webhookUrl) {
+        try {
+            final String host = URI.create(webhookUrl).getHost();
+            if (host != null) {
+                return host;
+            }
+        } catch (IllegalArgumentException e) {
+            // not a url, fall through
+        }
+        return "webhook";
+    }
+
+    /**
+     * Sends the message with every client concurrently and waits until all of them are done.
+     *
+     * @param outbox spools the message for each webhook before delivery when not null
+     * @return the outcome for each client, in the order of the clients
+     */
+    public static List<Outcome> send(List<SlackClient> clients, final String json, final String description,
+                                     final NotificationOutbox outbox) {
+        final List<CompletableFuture<Long>> deliveries = new ArrayList<>();
+        for (final SlackClient client : clients) {
+            deliveries.add(CompletableFuture.supplyAsync(() -> {
+                final long start = System.nanoTime();
+                client.sendMessage(json, description, outbox, null);
+                return System.nanoTime() - start;
+            }, EXECUTOR));
+        }
+        final List<Outcome> outcomes = new ArrayList<>();
+        for (int i = 0; i < clients.size(); i++) {
+            final String webhookUrl = clients.get(i).getChannelWebhookUrl();
+            try {
+                outcomes.add(new Outcome(webhookUrl, deliveries.get(i).join(), null));
+            } catch (CompletionException e) {
+                outcomes.add(new Outcome(webhookUrl, -1, e.getCause()));
+            }
+        }
+        return outcomes;
+    }
+
+    /**
+     * How the delivery to one webhook went.
+     */
+    public static final class Outcome {
+        private final String webhookUrl;
+        private final long nanos;
+        private final Throwable failure;
+
+        Outcome(String webhookUrl, long nanos, Throwable failure) {
+            this.webhookUrl = webhookUrl;
+            this.nanos = nanos;
+            this.failure = failure;
+        }
+
+        public String getWebhookUrl() {
+            return webhookUrl;
+        }
+
+        /**
+         * @return how long the delivery took, or -1 if it failed
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        public boolean isDelivered() {
+            return failure == null;
+        }
+
+        public Throwable getFailure() {
+            return failure;
+        }
+    }
+}
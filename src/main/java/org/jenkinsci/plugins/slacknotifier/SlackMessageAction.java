@@ -0,0 +1,117 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import hudson.model.InvisibleAction;
+import hudson.model.Run;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The message a build posted to a slack channel through the Web API. Later results of the same build edit this
+ * message rather than posting new ones, at most once per update interval. Results that arrive in between are
+ * not lost, the latest of them is sent when the interval is over. Only the message id is kept with the build, whoever
+ * publishes has to save the build after the first post.
+ */
+public class SlackMessageAction extends InvisibleAction {
+
+    private static final Logger LOG = Logger.getLogger(SlackMessageAction.class.getName());
+
+    /**
+     * What happened to a message handed to {@link #publish}.
+     */
+    public enum Outcome {
+        POSTED,
+        UPDATED,
+        /** sent once the update interval is over, together with anything that arrives until then */
+        DEFERRED
+    }
+
+    private final String target;
+    private String channel;
+    private String ts;
+
+    private transient long lastSent;
+    private transient String pending;
+    private transient boolean scheduled;
+
+    public SlackMessageAction(String target) {
+        this.target = target;
+    }
+
+    /**
+     * @return the action for the channel, added to the build if it does not have one yet
+     */
+    public static SlackMessageAction forTarget(Run<?, ?> build, String target) {
+        synchronized (build) {
+            for (SlackMessageAction action : build.getActions(SlackMessageAction.class)) {
+                if (action.target.equals(target)) {
+                    return action;
+                }
+            }
+            final SlackMessageAction action = new SlackMessageAction(target);
+            build.addAction(action);
+            return action;
+        }
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    /**
+     * @return the timestamp slack identifies the message by, null until it is posted
+     */
+    public synchronized String getTs() {
+        return ts;
+    }
+
+    /**
+     * Posts the message the first time, afterwards updates it unless it was updated less than the interval ago.
+     *
+     * @param scheduler runs the deferred update
+     * @throws RuntimeException if the message could not be posted or updated right away
+     */
+    public synchronized Outcome publish(SlackWebApiClient client, String message, long intervalMillis,
+                                        ScheduledExecutorService scheduler) {
+        if (ts == null) {
+            final SlackWebApiClient.PostedMessage posted = client.postMessage(target, message);
+            channel = posted.getChannel();
+            ts = posted.getTs();
+            lastSent = System.nanoTime();
+            return Outcome.POSTED;
+        }
+        pending = message;
+        if (scheduled) {
+            return Outcome.DEFERRED;
+        }
+        final long wait = intervalMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastSent);
+        if (wait <= 0) {
+            sendPending(client);
+            return Outcome.UPDATED;
+        }
+        scheduled = true;
+        scheduler.schedule(() -> flush(client), wait, TimeUnit.MILLISECONDS);
+        return Outcome.DEFERRED;
+    }
+
+    private synchronized void flush(SlackWebApiClient client) {
+        scheduled = false;
+        try {
+            sendPending(client);
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Unable to update slack message " + ts + " in " + target, e);
+        }
+    }
+
+    private void sendPending(SlackWebApiClient client) {
+        if (pending == null) {
+            return;
+        }
+        final String message = pending;
+        pending = null;
+        lastSent = System.nanoTime();
+        client.update(new SlackWebApiClient.PostedMessage(channel, ts), message);
+    }
+}
@@ -0,0 +1,101 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * The layout the messages of this plugin share, written straight to a {@link JsonWriter}: a line of text and one
+ * attachment coloured by the pass percentage, holding two columns of short fields that end in a separator and a
+ * total.
+ */
+final class SlackMessageLayout {
+
+    // "0 %" to "100 %", rendered for every feature
+    private static final String[] PERCENTAGES = new String[101];
+
+    static {
+        for (int i = 0; i < PERCENTAGES.length; i++) {
+            PERCENTAGES[i] = i + " %";
+        }
+    }
+
+    private SlackMessageLayout() {
+    }
+
+    /**
+     * Writes the message up to its first field.
+     */
+    static void begin(final JsonWriter json, final String text, final int passPercentage) throws IOException {
+        json.beginObject();
+        json.name("channel").value("#");
+        json.name("text").value(text);
+        json.name("icon_emoji").value(statusEmoji(passPercentage));
+        json.name("attachments").beginArray();
+        json.beginObject();
+        json.name("fields").beginArray();
+    }
+
+    /**
+     * Writes the message after its last field and flushes the writer.
+     */
+    static void end(final JsonWriter json, final int passPercentage, final String username) throws IOException {
+        json.endArray();
+        json.name("color").value(statusColor(passPercentage));
+        json.endObject();
+        json.endArray();
+        json.name("username").value(username);
+        json.endObject();
+        json.flush();
+    }
+
+    static void titles(final JsonWriter json, final String left, final String right) throws IOException {
+        shortTitle(json, left);
+        shortTitle(json, right);
+    }
+
+    static void row(final JsonWriter json, final String left, final String right) throws IOException {
+        shortObject(json, left);
+        shortObject(json, right);
+    }
+
+    /**
+     * Writes the separator and the row with the overall pass percentage.
+     */
+    static void total(final JsonWriter json, final String label, final int passPercentage) throws IOException {
+        row(json, "-------------------------------", "-------");
+        row(json, label, percentage(passPercentage));
+    }
+
+    static String percentage(final int passPercentage) {
+        return passPercentage >= 0 && passPercentage <= 100 ? PERCENTAGES[passPercentage] : passPercentage + " %";
+    }
+
+    static String statusColor(final int passPercentage) {
+        if (passPercentage == 100) {
+            return "good";
+        }
+        return passPercentage >= 98 ? "warning" : "danger";
+    }
+
+    static String statusEmoji(final int passPercentage) {
+        if (passPercentage == 100) {
+            return ":thumbsup:";
+        }
+        return passPercentage >= 98 ? ":hand:" : ":thumbsdown:";
+    }
+
+    private static void shortObject(final JsonWriter json, final String value) throws IOException {
+        json.beginObject();
+        json.name("value").value(value);
+        json.name("short").value(true);
+        json.endObject();
+    }
+
+    private static void shortTitle(final JsonWriter json, final String title) throws IOException {
+        json.beginObject();
+        json.name("title").value(title);
+        json.name("short").value(true);
+        json.endObject();
+    }
+}
@@ -0,0 +1,34 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+/**
+ * Bounds on a rendered message, so large suites still produce a message slack accepts. Features beyond the limits
+ * are left out, worst features first to be kept, and summarised as "...and N more".
+ */
+public class SlackMessageLimits {
+
+    public static final int DEFAULT_MAX_FEATURES = 50;
+    public static final int DEFAULT_MAX_PAYLOAD_BYTES = 30000;
+
+    public static final SlackMessageLimits DEFAULT = new SlackMessageLimits(DEFAULT_MAX_FEATURES, DEFAULT_MAX_PAYLOAD_BYTES);
+    public static final SlackMessageLimits UNLIMITED = new SlackMessageLimits(Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+    private final int maxFeatures;
+    private final int maxPayloadBytes;
+
+    /**
+     * @param maxFeatures     number of features listed, each takes two fields
+     * @param maxPayloadBytes size of the whole message in UTF-8
+     */
+    public SlackMessageLimits(int maxFeatures, int maxPayloadBytes) {
+        this.maxFeatures = maxFeatures;
+        this.maxPayloadBytes = maxPayloadBytes;
+    }
+
+    public int getMaxFeatures() {
+        return maxFeatures;
+    }
+
+    public int getMaxPayloadBytes() {
+        return maxPayloadBytes;
+    }
+}
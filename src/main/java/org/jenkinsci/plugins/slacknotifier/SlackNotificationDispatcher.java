@@ -0,0 +1,181 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.init.Terminator;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Controller wide queue that delivers rendered messages in the background, so builds only pay for enqueuing
+ * a notification and not for the round trip to slack.
+ */
+@Extension
+public class SlackNotificationDispatcher {
+
+    private static final Logger LOG = Logger.getLogger(SlackNotificationDispatcher.class.getName());
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+    public static final int DEFAULT_WORKERS = 2;
+
+    /**
+     * What happens to a notification when the queue is full.
+     */
+    public enum OverflowPolicy {
+        /** the submitting build waits until there is room in the queue */
+        BLOCK,
+        /** the notification is logged and discarded */
+        DROP
+    }
+
+    private final AtomicLong dropped = new AtomicLong();
+    private ThreadPoolExecutor executor;
+    private int queueCapacity;
+    private OverflowPolicy overflowPolicy;
+
+    public SlackNotificationDispatcher() {
+        configure(DEFAULT_WORKERS, DEFAULT_QUEUE_CAPACITY, OverflowPolicy.BLOCK);
+    }
+
+    public static SlackNotificationDispatcher get() {
+        return ExtensionList.lookupSingleton(SlackNotificationDispatcher.class);
+    }
+
+    /**
+     * Applies new limits. A change of capacity replaces the queue, messages already queued are still delivered
+     * by the old workers.
+     */
+    public synchronized void configure(int workers, int queueCapacity, OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+        if (executor != null && this.queueCapacity == queueCapacity) {
+            if (workers > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(workers);
+                executor.setCorePoolSize(workers);
+            } else {
+                executor.setCorePoolSize(workers);
+                executor.setMaximumPoolSize(workers);
+            }
+            return;
+        }
+        final ThreadPoolExecutor previous = executor;
+        this.queueCapacity = queueCapacity;
+        executor = new ThreadPoolExecutor(workers, workers, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new NamingThreadFactory(new DaemonThreadFactory(), "CucumberSlackDispatcher"),
+                new OverflowHandler());
+        executor.allowCoreThreadTimeOut(true);
+        if (previous != null) {
+            previous.shutdown();
+        }
+    }
+
+    /**
+     * Queues a delivery. Depending on the {@link OverflowPolicy} a full queue either blocks the caller or drops
+     * the delivery.
+     *
+     * @param description what is being delivered, used for logging
+     */
+    public void dispatch(final String description, final Runnable delivery) {
+        final ThreadPoolExecutor target;
+        synchronized (this) {
+            target = executor;
+        }
+        target.execute(new Delivery(description, delivery));
+        LOG.fine("Queued slack notification " + description + ", queue depth " + getQueueDepth());
+    }
+
+    /**
+     * @return number of notifications waiting for a worker
+     */
+    public synchronized int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return number of notifications that can still be queued without blocking or being dropped
+     */
+    public synchronized int getRemainingCapacity() {
+        return executor.getQueue().remainingCapacity();
+    }
+
+    /**
+     * @return number of notifications currently being delivered
+     */
+    public synchronized int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return number of notifications discarded because the queue was full
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @Terminator
+    public static void shutdown() throws InterruptedException {
+        final SlackNotificationDispatcher dispatcher = ExtensionList.lookup(SlackNotificationDispatcher.class).get(SlackNotificationDispatcher.class);
+        if (dispatcher != null) {
+            final ThreadPoolExecutor executor;
+            synchronized (dispatcher) {
+                executor = dispatcher.executor;
+            }
+            executor.shutdown();
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                LOG.warning(executor.getQueue().size() + " slack notifications were not delivered before shutdown");
+            }
+        }
+    }
+
+    private static final class Delivery implements Runnable {
+        private final String description;
+        private final Runnable delivery;
+
+        Delivery(String description, Runnable delivery) {
+            this.description = description;
+            this.delivery = delivery;
+        }
+
+        @Override
+        public void run() {
+            try {
+                delivery.run();
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "Unable to deliver slack notification " + description, e);
+            }
+        }
+
+        public String toString() {
+            return description;
+        }
+    }
+
+    private final class OverflowHandler implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor pool) {
+            if (pool.isShutdown()) {
+                throw new RejectedExecutionException("Slack notification dispatcher is shut down, dropping " + r);
+            }
+            if (overflowPolicy == OverflowPolicy.DROP) {
+                dropped.incrementAndGet();
+                LOG.warning("Slack notification queue is full, dropping " + r);
+                return;
+            }
+            try {
+                pool.getQueue().put(r);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting to queue " + r, e);
+            }
+        }
+    }
+}
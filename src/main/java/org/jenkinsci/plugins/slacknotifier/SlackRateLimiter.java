@@ -0,0 +1,87 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token buckets per webhook, sized by default to slack's budget of one message per second per webhook. Callers
+ * wait for their turn instead of having slack answer with 429s.
+ */
+public class SlackRateLimiter {
+
+    private static final SlackRateLimiter SHARED = new SlackRateLimiter(1.0, 1);
+
+    private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final double messagesPerSecond;
+    private final int burst;
+
+    /**
+     * @param messagesPerSecond sustained rate allowed for each webhook
+     * @param burst             number of messages that may be sent back to back after a quiet period
+     */
+    public SlackRateLimiter(double messagesPerSecond, int burst) {
+        this.messagesPerSecond = messagesPerSecond;
+        this.burst = burst;
+    }
+
+    public static SlackRateLimiter shared() {
+        return SHARED;
+    }
+
+    /**
+     * Blocks until a message may be sent to the webhook.
+     */
+    public void acquire(String webhookUrl) throws InterruptedException {
+        final long waitNanos = bucket(webhookUrl).reserve(System.nanoTime());
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Holds back every message to the webhook for the given time, e.g. when slack asked us to via Retry-After.
+     */
+    public void pause(String webhookUrl, long millis) {
+        bucket(webhookUrl).pauseUntil(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    private TokenBucket bucket(String webhookUrl) {
+        return buckets.computeIfAbsent(webhookUrl, url -> new TokenBucket(messagesPerSecond / TimeUnit.SECONDS.toNanos(1), burst));
+    }
+
+    private static final class TokenBucket {
+        private final double tokensPerNano;
+        private final int capacity;
+        private double tokens;
+        private long lastRefill;
+        private long pausedUntil;
+
+        TokenBucket(double tokensPerNano, int capacity) {
+            this.tokensPerNano = tokensPerNano;
+            this.capacity = capacity;
+            this.tokens = capacity;
+            this.lastRefill = System.nanoTime();
+            this.pausedUntil = lastRefill;
+        }
+
+        /**
+         * Takes a token, going into debt if there is none so that concurrent callers queue up in order.
+         *
+         * @return nanoseconds the caller has to wait before sending
+         */
+        synchronized long reserve(long now) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+            tokens = tokens - 1;
+            final long tokenWait = tokens >= 0 ? 0 : (long) Math.ceil(-tokens / tokensPerNano);
+            return Math.max(tokenWait, pausedUntil - now);
+        }
+
+        synchronized void pauseUntil(long until) {
+            if (until - pausedUntil > 0) {
+                pausedUntil = until;
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+/**
+ * The parts of a Slack HTTP response the client acts on.
+ */
+public class SlackResponse {
+    private final int status;
+    private final String retryAfter;
+    private final String body;
+
+    public SlackResponse(int status, String retryAfter, String body) {
+        this.status = status;
+        this.retryAfter = retryAfter;
+        this.body = body;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the raw {@code Retry-After} header, or null if the response did not carry one
+     */
+    public String getRetryAfter() {
+        return retryAfter;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public boolean isOk() {
+        return status == 200;
+    }
+
+    public String toString() {
+        return "HTTP " + status;
+    }
+}
@@ -0,0 +1,69 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether and when a failed post is retried: 429 and 5xx responses are retried with exponential backoff
+ * and full jitter, a Retry-After header from slack takes precedence over the computed delay. A post slack asks to
+ * hold back for longer than the maximum delay is not retried early, it is given up.
+ */
+public class SlackRetryPolicy {
+
+    public static final SlackRetryPolicy DEFAULT = new SlackRetryPolicy(3, 1000, 30000);
+
+    private final int maxRetries;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    public SlackRetryPolicy(int maxRetries, long baseDelayMillis, long maxDelayMillis) {
+        this.maxRetries = maxRetries;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public boolean isRetryable(SlackResponse response) {
+        return response.getStatus() == 429 || response.getStatus() >= 500;
+    }
+
+    /**
+     * @param attempt zero based number of the attempt that just failed
+     * @return milliseconds to wait before the next attempt, or -1 if slack asked to wait longer than the maximum
+     * delay
+     */
+    public long delayMillis(int attempt, SlackResponse response) {
+        final long retryAfter = parseRetryAfter(response.getRetryAfter());
+        if (retryAfter >= 0) {
+            return retryAfter <= maxDelayMillis ? retryAfter : -1;
+        }
+        final long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt, 30));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * @return the delay in milliseconds, or -1 if the header is missing or unreadable
+     */
+    static long parseRetryAfter(String retryAfter) {
+        if (retryAfter == null || retryAfter.trim().isEmpty()) {
+            return -1;
+        }
+        final String value = retryAfter.trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                final ZonedDateTime date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(date.getZone()), date).toMillis());
+            } catch (DateTimeParseException unreadable) {
+                return -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Posts messages through the Slack Web API with a bot token. Unlike an incoming webhook the API returns the
+ * timestamp of a posted message, so the message can be edited later instead of posting a new one.
+ */
+public class SlackWebApiClient {
+
+    public static final String DEFAULT_API_URL = "https://slack.com/api/";
+
+    private final String apiUrl;
+    private final String token;
+    private final SlackClient.Transport transport;
+    private final SlackRateLimiter rateLimiter;
+    private final SlackRetryPolicy retryPolicy;
+
+    public SlackWebApiClient(String apiUrl, String token, SlackClient.Transport transport) {
+        this(apiUrl, token, transport, SlackRateLimiter.shared(), SlackRetryPolicy.DEFAULT);
+    }
+
+    public SlackWebApiClient(String apiUrl, String token, SlackClient.Transport transport, SlackRateLimiter rateLimiter,
+                             SlackRetryPolicy retryPolicy) {
+        this.apiUrl = apiUrl.endsWith("/") ? apiUrl : apiUrl + "/";
+        this.token = token;
+        this.transport = transport;
+        this.rateLimiter = rateLimiter;
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Slack channels are addressed by name or id, webhooks by url.
+     */
+    public static boolean isChannel(String target) {
+        return !target.startsWith("http://") && !target.startsWith("https://");
+    }
+
+    /**
+     * Posts a new message with {@code chat.postMessage}.
+     *
+     * @param message a rendered message, its channel is replaced
+     * @return where the message was posted, needed to update it
+     */
+    public PostedMessage postMessage(String channel, String message) {
+        final JsonObject response = call("chat.postMessage", address(message, channel, null));
+        return new PostedMessage(response.get("channel").getAsString(), response.get("ts").getAsString());
+    }
+
+    /**
+     * Replaces the content of a posted message with {@code chat.update}.
+     */
+    public void update(PostedMessage posted, String message) {
+        call("chat.update", address(message, posted.getChannel(), posted.getTs()));
+    }
+
+    private static String address(String message, String channel, String ts) {
+        final JsonObject json = JsonParser.parseString(message).getAsJsonObject();
+        json.addProperty("channel", channel);
+        if (ts != null) {
+            json.addProperty("ts", ts);
+        }
+        return json.toString();
+    }
+
+    /**
+     * Calls an API method within its rate limit, retrying rate limited and server side failures.
+     *
+     * @throws RuntimeException if the call failed or slack answered with an error
+     */
+    private JsonObject call(String method, String json) {
+        final String url = apiUrl + method;
+        final int payloadLength = json.getBytes(StandardCharsets.UTF_8).length;
+        final long start = System.nanoTime();
+        final SlackResponse response;
+        try {
+            response = SlackClient.deliver(() -> transport.post(url, json, "Bearer " + token), url, rateLimiter, retryPolicy,
+                    SlackCircuitBreaker.shared(), () -> payloadLength);
+        } catch (IOException e) {
+            throw new RuntimeException("Slack API call " + method + " could not be made", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while calling slack", e);
+        }
+        CucumberSlackMetrics.shared().recordDeliver(System.nanoTime() - start);
+        if (!response.isOk()) {
+            throw new RuntimeException("Received HTTP Status code [" + response.getStatus() + "] from slack API call " + method);
+        }
+        final JsonObject body;
+        try {
+            final JsonElement parsed = JsonParser.parseString(response.getBody());
+            body = parsed.isJsonObject() ? parsed.getAsJsonObject() : new JsonObject();
+        } catch (JsonParseException e) {
+            throw new RuntimeException("Slack API call " + method + " answered with an unexpected body", e);
+        }
+        if (!body.has("ok") || !body.get("ok").getAsBoolean()) {
+            final String error = body.has("error") ? body.get("error").getAsString() : "unknown error";
+            throw new RuntimeException("Slack API call " + method + " failed: " + error);
+        }
+        return body;
+    }
+
+    /**
+     * Identifies a posted message, the channel id and the message timestamp slack returned for it.
+     */
+    public static final class PostedMessage {
+        private final String channel;
+        private final String ts;
+
+        public PostedMessage(String channel, String ts) {
+            this.channel = channel;
+            this.ts = ts;
+        }
+
+        public String getChannel() {
+            return channel;
+        }
+
+        public String getTs() {
+            return ts;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Counts the UTF-8 encoded size of what is written, passing it on to another writer if there is one.
+ */
+class Utf8CountingWriter extends Writer {
+
+    private final Writer out;
+    private long bytes;
+
+    Utf8CountingWriter() {
+        this(null);
+    }
+
+    Utf8CountingWriter(Writer out) {
+        this.out = out;
+    }
+
+    long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        bytes = bytes + utf8Length((char) c);
+        if (out != null) {
+            out.write(c);
+        }
+    }
+
+    @Override
+    public void write(char[] chars, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            bytes = bytes + utf8Length(chars[i]);
+        }
+        if (out != null) {
+            out.write(chars, off, len);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            bytes = bytes + utf8Length(str.charAt(i));
+        }
+        if (out != null) {
+            out.write(str, off, len);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out != null) {
+            out.close();
+        }
+    }
+
+    // surrogates count two bytes each, four for the pair
+    private static int utf8Length(char c) {
+        if (c < 0x80) {
+            return 1;
+        }
+        return c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+    }
+}
@@ -0,0 +1,317 @@
+package org.jenkinsci.plugins.slacknotifier.workflow;
+
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.CauseOfInterruption;
+import jenkins.util.Timer;
+import org.jenkinsci.plugins.slacknotifier.CucumberSlackService;
+import org.jenkinsci.plugins.slacknotifier.ReportTail;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
+import org.jenkinsci.plugins.workflow.steps.BodyExecution;
+import org.jenkinsci.plugins.workflow.steps.BodyExecutionCallback;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watches a cucumber report while the tests in its body write it, posting the running totals to slack. With a
+ * failure threshold an alert is posted, and optionally the body aborted, as soon as too many scenarios failed.
+ */
+public class CucumberSlackProgressStep extends AbstractStepImpl {
+
+    public static final int DEFAULT_INTERVAL = 30;
+    public static final int DEFAULT_MIN_SCENARIOS = 20;
+
+    private final @Nonnull
+    String channel;
+    private String json;
+    private int interval = DEFAULT_INTERVAL;
+    private int failureThreshold;
+    private int minScenarios = DEFAULT_MIN_SCENARIOS;
+    private boolean abortOnThreshold;
+
+    @DataBoundConstructor
+    public CucumberSlackProgressStep(@Nonnull String channel) {
+        this.channel = channel;
+    }
+
+    @Nonnull
+    public String getChannel() {
+        return channel;
+    }
+
+    public String getJson() {
+        return json;
+    }
+
+    @DataBoundSetter
+    public void setJson(String json) {
+        this.json = Util.fixEmpty(json);
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * @param interval seconds between two looks at the report, at least one
+     */
+    @DataBoundSetter
+    public void setInterval(int interval) {
+        this.interval = Math.max(1, interval);
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    /**
+     * @param failureThreshold percentage of failed scenarios an alert is posted at, 0 for no alert
+     */
+    @DataBoundSetter
+    public void setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = Math.max(0, Math.min(100, failureThreshold));
+    }
+
+    public int getMinScenarios() {
+        return minScenarios;
+    }
+
+    /**
+     * @param minScenarios scenarios that have to run before the failure threshold applies
+     */
+    @DataBoundSetter
+    public void setMinScenarios(int minScenarios) {
+        this.minScenarios = Math.max(1, minScenarios);
+    }
+
+    public boolean isAbortOnThreshold() {
+        return abortOnThreshold;
+    }
+
+    @DataBoundSetter
+    public void setAbortOnThreshold(boolean abortOnThreshold) {
+        this.abortOnThreshold = abortOnThreshold;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends AbstractStepDescriptorImpl {
+
+        public DescriptorImpl() {
+            super(CucumberSlackProgressExecution.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "cucumberSlackProgress";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Send the progress of a running cucumber report to slack";
+        }
+
+        @Override
+        public boolean takesImplicitBlockArgument() {
+            return true;
+        }
+    }
+
+    public static class CucumberSlackProgressExecution extends AbstractStepExecutionImpl {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final Logger LOG = Logger.getLogger(CucumberSlackProgressExecution.class.getName());
+
+        private static final int POLLER_THREADS = 4;
+        // the timer only schedules polls, reading the report on the agent and posting to slack can take long and
+        // must not hold up the shared timer threads
+        private static final ExecutorService POLLERS = pollers();
+
+        @Inject
+        private transient CucumberSlackProgressStep step;
+
+        // the step is not kept when the pipeline is persisted, its settings are
+        private String channel;
+        private String json;
+        private int interval;
+        private int failureThreshold;
+        private int minScenarios;
+        private boolean abortOnThreshold;
+
+        private ReportTail tail;
+        private int publishedScenarios = -1;
+        private boolean alerted;
+        private BodyExecution body;
+
+        private transient ScheduledFuture<?> watcher;
+        private transient boolean polling;
+
+        @Override
+        public boolean start() throws Exception {
+            channel = step.channel;
+            json = step.json;
+            interval = step.interval;
+            failureThreshold = step.failureThreshold;
+            minScenarios = step.minScenarios;
+            abortOnThreshold = step.abortOnThreshold;
+            tail = new ReportTail();
+            body = getContext().newBodyInvoker().withCallback(new StopWatching(this)).start();
+            watch();
+            return false;
+        }
+
+        @Override
+        public void onResume() {
+            super.onResume();
+            watch();
+        }
+
+        @Override
+        public void stop(@Nonnull Throwable cause) throws Exception {
+            stopWatching();
+            if (body != null) {
+                body.cancel(cause);
+            } else {
+                getContext().onFailure(cause);
+            }
+        }
+
+        private synchronized void watch() {
+            if (json != null && watcher == null) {
+                watcher = Timer.get().scheduleWithFixedDelay(this::schedulePoll, interval, interval, TimeUnit.SECONDS);
+            }
+        }
+
+        private synchronized void stopWatching() {
+            if (watcher != null) {
+                watcher.cancel(false);
+                watcher = null;
+            }
+        }
+
+        /**
+         * Hands a poll to the pollers, unless the previous one of this execution is still running.
+         */
+        private void schedulePoll() {
+            synchronized (this) {
+                if (polling || watcher == null) {
+                    return;
+                }
+                polling = true;
+            }
+            POLLERS.execute(this::poll);
+        }
+
+        /**
+         * Counts what was added to the report since the last look, posts the totals if they changed and checks the
+         * failure threshold. Failures are logged, a missed update is made up for by the next one. Only one poll runs
+         * at a time, and the lock is not held while the agent or slack is waited for, so the step can always stop.
+         */
+        private void poll() {
+            try {
+                final FilePath workspace = getContext().get(FilePath.class);
+                final Run<?, ?> run = getContext().get(Run.class);
+                final TaskListener listener = getContext().get(TaskListener.class);
+                if (workspace == null || run == null || listener == null) {
+                    return;
+                }
+                final CucumberSlackService slackService = new CucumberSlackService(null);
+                final ReportTail before;
+                synchronized (this) {
+                    before = tail;
+                }
+                final ReportTail progress = slackService.tailReport(workspace, json, before);
+                String alert = null;
+                synchronized (this) {
+                    tail = progress;
+                    if (watcher == null || progress.getScenarios() == publishedScenarios) {
+                        return;
+                    }
+                    publishedScenarios = progress.getScenarios();
+                    if (!alerted && failureThreshold > 0 && progress.exceeds(failureThreshold, minScenarios)) {
+                        alerted = true;
+                        alert = String.format("%d of %d scenarios failed so far, more than the threshold of %d %%",
+                                progress.getFailed(), progress.getScenarios(), failureThreshold);
+                    }
+                }
+                if (alert != null) {
+                    listener.getLogger().println("Cucumber slack: " + alert);
+                }
+                slackService.sendProgressToSlack(run, channel, progress, alert, listener);
+                if (alert != null && abortOnThreshold && body != null) {
+                    stopWatching();
+                    body.cancel(new FailureThresholdExceeded(alert));
+                }
+            } catch (IOException | RuntimeException e) {
+                LOG.log(Level.WARNING, "Unable to post the progress of " + json + " to slack", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                synchronized (this) {
+                    polling = false;
+                }
+            }
+        }
+
+        private static ExecutorService pollers() {
+            final ThreadPoolExecutor pollers = new ThreadPoolExecutor(POLLER_THREADS, POLLER_THREADS, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), new NamingThreadFactory(new DaemonThreadFactory(), "CucumberSlackProgress"));
+            pollers.allowCoreThreadTimeOut(true);
+            return pollers;
+        }
+    }
+
+    private static final class StopWatching extends BodyExecutionCallback.TailCall {
+
+        private static final long serialVersionUID = 1L;
+
+        private final CucumberSlackProgressExecution execution;
+
+        StopWatching(CucumberSlackProgressExecution execution) {
+            this.execution = execution;
+        }
+
+        @Override
+        protected void finished(StepContext context) {
+            execution.stopWatching();
+        }
+    }
+
+    /**
+     * Why the body was aborted, shown in the build log and the build's interruption causes.
+     */
+    public static final class FailureThresholdExceeded extends CauseOfInterruption {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String reason;
+
+        public FailureThresholdExceeded(String reason) {
+            this.reason = reason;
+        }
+
+        @Override
+        public String getShortDescription() {
+            return "Aborted by cucumberSlackProgress: " + reason;
+        }
+    }
+}
@@ -8,7 +8,9 @@ import hudson.model.Run;
 import hudson.model.TaskListener;
 import jenkins.model.Jenkins;
 import org.jenkinsci.plugins.slacknotifier.CucumberSlack;
+import org.jenkinsci.plugins.slacknotifier.CucumberResult;
 import org.jenkinsci.plugins.slacknotifier.CucumberSlackService;
+import org.jenkinsci.plugins.slacknotifier.CucumberSummary;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
 import org.jenkinsci.plugins.workflow.steps.AbstractSynchronousNonBlockingStepExecution;
@@ -27,6 +29,8 @@ public class CucumberSlackStep extends AbstractStepImpl {
     private boolean hideSuccessfulResults;
     private String extra;
     private boolean failOnError;
+    private boolean digest;
+    private boolean digestOnly;
 
     @DataBoundConstructor
     public CucumberSlackStep(@Nonnull String channel) {
@@ -74,6 +78,30 @@ public class CucumberSlackStep extends AbstractStepImpl {
         this.failOnError = failOnError;
     }
 
+    public boolean isDigest() {
+        return digest;
+    }
+
+    /**
+     * @param digest add the result to the scheduled digest of the channels as well
+     */
+    @DataBoundSetter
+    public void setDigest(boolean digest) {
+        this.digest = digest;
+    }
+
+    public boolean isDigestOnly() {
+        return digestOnly;
+    }
+
+    /**
+     * @param digestOnly only add the result to the scheduled digest, do not post it now
+     */
+    @DataBoundSetter
+    public void setDigestOnly(boolean digestOnly) {
+        this.digestOnly = digestOnly;
+    }
+
     @Extension
     public static class DescriptorImpl extends AbstractStepDescriptorImpl {
 
@@ -92,7 +120,7 @@ public class CucumberSlackStep extends AbstractStepImpl {
         }
     }
 
-    public static class CucumberSlackSendExecution extends AbstractSynchronousNonBlockingStepExecution<Void> {
+    public static class CucumberSlackSendExecution extends AbstractSynchronousNonBlockingStepExecution<CucumberSummary> {
 
         private static final long serialVersionUID = 1L;
 
@@ -109,7 +137,7 @@ public class CucumberSlackStep extends AbstractStepImpl {
         private transient FilePath workspace;
 
         @Override
-        protected Void run() throws Exception {
+        protected CucumberSummary run() throws Exception {
 
             //default to global config values if not set in step, but allow step to override all global settings
             Jenkins jenkins;
@@ -131,15 +159,35 @@ public class CucumberSlackStep extends AbstractStepImpl {
 
             CucumberSlackService slackService = new CucumberSlackService(webHookEndpoint);
 
+            final CucumberResult result;
+            try {
+                result = slackService.readCucumberResult(workspace, json, listener);
+            } catch (Exception exp) {
+                if (step.failOnError) {
+                    throw new AbortException("Unable to read cucumber report: " + exp);
+                }
+                listener.error("Unable to read cucumber report: " + exp);
+                return null;
+            }
+
+            if (step.digest || step.digestOnly) {
+                slackService.addToScheduledDigest(run, result, json, channel, listener);
+            }
+            if (step.digestOnly) {
+                return CucumberSummary.of(result, CucumberSlack.get().getMessageLimits().getMaxFeatures());
+            }
+
             try {
-                slackService.sendCucumberReportToSlack(run, workspace, json, channel, extra, hideSuccessfulResults);
+                // with failOnError the step has to see delivery failures, so it waits for slack
+                slackService.sendCucumberResultToSlack(run, result, json, channel, extra, hideSuccessfulResults, step.failOnError, listener);
             } catch (Exception exp) {
                 if (step.failOnError) {
                     throw new AbortException("Unable to send slack notification: " + exp);
                 }
             }
 
-            return null;
+            // the script can act on the result even if slack could not be reached
+            return CucumberSummary.of(result, CucumberSlack.get().getMessageLimits().getMaxFeatures());
         }
 
     }
@@ -0,0 +1,75 @@
+package org.jenkinsci.plugins.slacknotifier.workflow;
+
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.model.TaskListener;
+import org.jenkinsci.plugins.slacknotifier.CucumberSlack;
+import org.jenkinsci.plugins.slacknotifier.CucumberSlackService;
+import org.jenkinsci.plugins.slacknotifier.CucumberSummary;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractSynchronousNonBlockingStepExecution;
+import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+
+/**
+ * Reads a cucumber report and returns its summary without posting to slack, so a pipeline can decide what to do
+ * with the result. The report is parsed on the agent, only the summary is kept in the pipeline's state.
+ */
+public class CucumberSummaryStep extends AbstractStepImpl {
+
+    private final @Nonnull
+    String json;
+
+    @DataBoundConstructor
+    public CucumberSummaryStep(@Nonnull String json) {
+        this.json = json;
+    }
+
+    @Nonnull
+    public String getJson() {
+        return json;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends AbstractStepDescriptorImpl {
+
+        public DescriptorImpl() {
+            super(CucumberSummaryExecution.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "cucumberSummary";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Summarize a cucumber report";
+        }
+    }
+
+    public static class CucumberSummaryExecution extends AbstractSynchronousNonBlockingStepExecution<CucumberSummary> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Inject
+        private transient CucumberSummaryStep step;
+
+        @StepContextParameter
+        private transient TaskListener listener;
+
+        @StepContextParameter
+        private transient FilePath workspace;
+
+        @Override
+        protected CucumberSummary run() throws Exception {
+            // all features are read, a cucumberSlackSend of the same report afterwards reuses the parse
+            return CucumberSummary.of(new CucumberSlackService(null).readCucumberResult(workspace, step.json, listener),
+                    CucumberSlack.get().getMessageLimits().getMaxFeatures());
+        }
+    }
+}
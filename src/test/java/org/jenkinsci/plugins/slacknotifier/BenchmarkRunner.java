@@ -0,0 +1,37 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the parsing and rendering benchmarks, only with {@code mvn test -Dbenchmark}. Results are written to
+ * {@code target/jmh-report.json} so they can be compared between releases.
+ */
+public class BenchmarkRunner {
+
+    @Test
+    public void runJmhBenchmarks() throws Exception {
+        Options options = new OptionsBuilder()
+                .include(ParseBenchmark.class.getName())
+                .include(RenderBenchmark.class.getName())
+                .mode(Mode.Throughput)
+                .timeUnit(TimeUnit.SECONDS)
+                .warmupIterations(2)
+                .measurementIterations(5)
+                .forks(1)
+                .jvmArgsAppend("-Xmx8g")
+                .addProfiler(GCProfiler.class)
+                .shouldFailOnError(true)
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-report.json")
+                .build();
+        new Runner(options).run();
+    }
+}
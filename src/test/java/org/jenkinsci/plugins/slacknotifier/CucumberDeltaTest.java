@@ -0,0 +1,136 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CucumberDeltaTest {
+
+    @Test
+    public void storesFeaturesCompactly() {
+        CucumberResult result = new CucumberResult(Arrays.asList(new FeatureResult("features/a.feature", "A\twith tab", 50),
+                new FeatureResult(null, "B", 100)), 6, 83);
+        CucumberResult copy = new CucumberResultAction("cucumber.json", result).getResult();
+        assertEquals(6, copy.getTotalScenarios());
+        assertEquals(83, copy.getPassPercentage());
+        List<FeatureResult> features = copy.getFeatureResults();
+        assertEquals(2, features.size());
+        assertEquals("features/a.feature", features.get(0).getUri());
+        assertEquals("A with tab", features.get(0).getDisplayName());
+        assertEquals(50, features.get(0).getPassPercentage());
+        assertNull(features.get(1).getUri());
+        assertEquals("B", features.get(1).getDisplayName());
+        assertEquals(100, features.get(1).getPassPercentage());
+    }
+
+    @Test
+    public void comparesWithPreviousBuild() {
+        CucumberResult previous = result(feature("a", 50), feature("b", 0), feature("c", 100));
+        CucumberResult current = result(feature("a", 100), feature("b", 50), feature("c", 0), feature("d", 0));
+
+        CucumberDelta delta = CucumberDelta.between(previous, current);
+        assertEquals(Arrays.asList("c", "d"), delta.getNewlyFailing());
+        assertEquals(Arrays.asList("a"), delta.getFixed());
+        assertEquals(Arrays.asList("b"), delta.getStillFailing());
+        assertTrue(new CucumberResult(current.getFeatureResults(), 4, 50).toSlackMessage("job", 2, "http://jenkins/", null, delta)
+                .contains("Newly failing (2)"));
+    }
+
+    @Test
+    public void missingFeaturesAreNotFixed() {
+        CucumberResult previous = result(feature("a", 50), feature("deleted", 0), feature("shard", 0));
+        CucumberResult current = result(feature("a", 100));
+
+        CucumberDelta delta = CucumberDelta.between(previous, current);
+        assertEquals(Arrays.asList("a"), delta.getFixed());
+        assertTrue(delta.getStillFailing().isEmpty());
+        assertTrue(delta.getNewlyFailing().isEmpty());
+    }
+
+    @Test
+    public void hiddenFeaturesAreStoredForTheNextBuild() {
+        CucumberResult current = new CucumberResult(Arrays.asList(feature("a", 100), feature("b", 0)), 4, 50);
+        CucumberResult shown = current.withoutSuccessfulFeatures();
+        assertEquals(Arrays.asList("b"), names(shown));
+        assertEquals(4, shown.getTotalScenarios());
+        assertEquals(50, shown.getPassPercentage());
+
+        CucumberResult stored = new CucumberResultAction("cucumber.json", current).getResult();
+        assertEquals(Arrays.asList("a", "b"), names(stored));
+        CucumberDelta delta = CucumberDelta.between(stored, result(feature("a", 100), feature("b", 100)));
+        assertEquals(Arrays.asList("b"), delta.getFixed());
+    }
+
+    @Test
+    public void storesDurationsCompactly() {
+        DurationHistogram durations = new DurationHistogram();
+        durations.add(TimeUnit.MILLISECONDS.toNanos(300));
+        durations.add(TimeUnit.SECONDS.toNanos(3));
+        CucumberResult result = new CucumberResult(Arrays.asList(new FeatureResult("features/a.feature", "A", 50, 42L, durations),
+                new FeatureResult("features/b.feature", "B", 100)), 3, 66);
+        result.setSlowestScenarios(Arrays.asList(new ScenarioTiming("A", "slow one", 3000), new ScenarioTiming("A", "fast one", 300)));
+
+        CucumberResult copy = new CucumberResultAction("cucumber.json", result).getResult();
+        assertEquals(42L, copy.getFeatureResults().get(0).getDurationNanos());
+        assertEquals(durations, copy.getFeatureResults().get(0).getDurations());
+        assertEquals("A", copy.getFeatureResults().get(0).getDisplayName());
+        assertNull(copy.getFeatureResults().get(1).getDurations());
+        assertEquals("B", copy.getFeatureResults().get(1).getDisplayName());
+        assertEquals(2, copy.getSlowestScenarios().size());
+        assertEquals("slow one", copy.getSlowestScenarios().get(0).getScenario());
+        assertEquals("A", copy.getSlowestScenarios().get(0).getFeature());
+        assertEquals(3000, copy.getSlowestScenarios().get(0).getNanos());
+    }
+
+    @Test
+    public void flagsFeaturesThatBecameSlower() {
+        CucumberResult previous = result(timed("a", 2, 2), timed("b", 2, 2), timed("c", 20, 20));
+        CucumberResult earlier = result(timed("a", 2, 2), timed("b", 2, 2));
+        CucumberResult current = result(timed("a", 2, 8), timed("b", 2, 2), timed("c", 20, 25), timed("d", 60, 60));
+        current.setSlowestScenarios(Arrays.asList(new ScenarioTiming("d", "slowest", TimeUnit.SECONDS.toNanos(60))));
+
+        CucumberDelta delta = CucumberDelta.between(previous, current).withSlowdowns(Arrays.asList(previous, earlier), current, 50);
+        // c grew by less than the threshold, d has no history
+        assertEquals(Arrays.asList("a: p95 2.5 s \u2192 10 s"), delta.getSlower());
+        String message = current.toSlackMessage("job", 3, "http://jenkins/", null, delta);
+        assertTrue(message.contains("Slower (1)"));
+        assertTrue(message.contains("slowest (d): 1 min"));
+
+        assertTrue(CucumberDelta.between(previous, current).withSlowdowns(Arrays.asList(previous, earlier), current, 500)
+                .getSlower().isEmpty());
+    }
+
+    @Test
+    public void firstBuildHasNoDelta() {
+        assertTrue(CucumberDelta.between(null, result(feature("a", 0))).isEmpty());
+    }
+
+    private static CucumberResult result(FeatureResult... features) {
+        return new CucumberResult(Arrays.asList(features), features.length, 0);
+    }
+
+    private static List<String> names(CucumberResult result) {
+        List<String> names = new ArrayList<>();
+        for (FeatureResult feature : result.getFeatureResults()) {
+            names.add(feature.getDisplayName());
+        }
+        return names;
+    }
+
+    private static FeatureResult timed(String name, long... seconds) {
+        DurationHistogram durations = new DurationHistogram();
+        for (long s : seconds) {
+            durations.add(TimeUnit.SECONDS.toNanos(s));
+        }
+        return new FeatureResult("features/" + name + ".feature", name, 100, 0, durations);
+    }
+
+    private static FeatureResult feature(String name, int passPercentage) {
+        return new FeatureResult("features/" + name + ".feature", name, passPercentage);
+    }
+}
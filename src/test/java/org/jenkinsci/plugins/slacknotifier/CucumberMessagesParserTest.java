@@ -0,0 +1,99 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class CucumberMessagesParserTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void canParseMessagesReport() throws IOException {
+        CucumberResult result = parse("messages-result.ndjson", false);
+        assertEquals(4, result.getTotalScenarios());
+        assertEquals(2, result.getTotalFeatures());
+        assertEquals(75, result.getPassPercentage());
+
+        FeatureResult login = result.getFeatureResults().get(0);
+        assertEquals("features/login.feature", login.getUri());
+        assertEquals("Login", login.getDisplayName());
+        // the retried scenario passed on its second attempt
+        assertEquals(100, login.getPassPercentage());
+        assertEquals(2_100_000_000L, login.getDurationNanos());
+        assertEquals("Search", result.getFeatureResults().get(1).getDisplayName());
+        assertEquals(0, result.getFeatureResults().get(1).getPassPercentage());
+
+        ScenarioTiming slowest = result.getSlowestScenarios().get(0);
+        assertEquals("Login", slowest.getFeature());
+        assertEquals("Valid login", slowest.getScenario());
+        assertEquals(1_500_000_000L, slowest.getNanos());
+    }
+
+    @Test
+    public void canHideSuccessfulFeatures() throws IOException {
+        CucumberResult result = parse("messages-result.ndjson", true);
+        assertEquals(4, result.getTotalScenarios());
+        assertEquals(1, result.getTotalFeatures());
+        assertEquals("Search", result.getFeatureResults().get(0).getDisplayName());
+    }
+
+    @Test
+    public void canParseCompressedMessagesReport() throws Exception {
+        File report = temporaryFolder.newFile("cucumber.ndjson.gz");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(report))) {
+            Files.copy(new File("src/test/resources/messages-result.ndjson").toPath(), out);
+        }
+        CucumberResult result = new CucumberReportCallable("cucumber.ndjson.gz", false).invoke(temporaryFolder.getRoot(), null);
+        assertEquals(4, result.getTotalScenarios());
+        assertEquals(75, result.getPassPercentage());
+    }
+
+    @Test
+    public void mergesRerunsByScenarioLine() throws Exception {
+        File reports = temporaryFolder.newFolder("cucumber");
+        Files.copy(new File("src/test/resources/messages-result.ndjson").toPath(), new File(reports, "run.ndjson").toPath());
+        // a rerun of the failed scenario, cucumber gives it new ids
+        write(new File(reports, "rerun.ndjson"), String.join("\n",
+                "{\"gherkinDocument\":{\"uri\":\"features/search.feature\",\"feature\":{\"name\":\"Search\",\"children\":["
+                        + "{\"scenario\":{\"id\":\"x1\",\"location\":{\"line\":3,\"column\":3},\"name\":\"Search for nothing\"}}]}}}",
+                "{\"pickle\":{\"id\":\"x2\",\"uri\":\"features/search.feature\",\"name\":\"Search for nothing\",\"astNodeIds\":[\"x1\"]}}",
+                "{\"testCase\":{\"id\":\"x3\",\"pickleId\":\"x2\",\"testSteps\":[]}}",
+                "{\"testCaseStarted\":{\"id\":\"x4\",\"testCaseId\":\"x3\",\"attempt\":0}}",
+                "{\"testStepFinished\":{\"testCaseStartedId\":\"x4\",\"testStepResult\":{\"status\":\"PASSED\"}}}",
+                "{\"testCaseFinished\":{\"testCaseStartedId\":\"x4\",\"willBeRetried\":false}}", ""));
+
+        CucumberResult result = new CucumberReportCallable("cucumber/*.ndjson", false).invoke(temporaryFolder.getRoot(), null);
+        assertEquals(4, result.getTotalScenarios());
+        assertEquals(2, result.getTotalFeatures());
+        assertEquals(100, result.getPassPercentage());
+    }
+
+    @Test
+    public void toleratesEmptyRun() throws IOException {
+        CucumberResult result = new CucumberReportParser(false).parse(new StringReader(
+                "{\"meta\":{\"protocolVersion\":\"22.0.0\"}}\n{\"testRunFinished\":{\"success\":true}}\n"));
+        assertEquals(0, result.getTotalScenarios());
+        assertEquals(100, result.getPassPercentage());
+    }
+
+    private static void write(File file, String content) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(content);
+        }
+    }
+
+    private CucumberResult parse(String filename, boolean hideSuccessfulResults) throws IOException {
+        try (Reader reader = new InputStreamReader(new FileInputStream(new File("src/test/resources", filename)), StandardCharsets.UTF_8)) {
+            return new CucumberReportParser(hideSuccessfulResults).parse(reader);
+        }
+    }
+}
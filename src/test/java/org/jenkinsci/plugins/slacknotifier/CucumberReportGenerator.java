@@ -0,0 +1,111 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Writes synthetic cucumber JSON reports of any size for benchmarks. Reports are streamed, so a million scenarios
+ * never have to fit in memory, and seeded, so every run sees the same report.
+ */
+class CucumberReportGenerator {
+
+    private final int features;
+    private final int scenariosPerFeature;
+    private final int stepsPerScenario;
+    private final double failureRate;
+
+    CucumberReportGenerator(int features, int scenariosPerFeature, int stepsPerScenario, double failureRate) {
+        this.features = features;
+        this.scenariosPerFeature = scenariosPerFeature;
+        this.stepsPerScenario = stepsPerScenario;
+        this.failureRate = failureRate;
+    }
+
+    File write(File file) throws IOException {
+        try (Writer writer = new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8)) {
+            write(writer);
+        }
+        return file;
+    }
+
+    void write(Writer writer) throws IOException {
+        final Random random = new Random(42);
+        final JsonWriter json = new JsonWriter(writer);
+        json.beginArray();
+        for (int f = 0; f < features; f++) {
+            json.beginObject();
+            json.name("uri").value("features/module-" + (f % 100) + "/feature-" + f + ".feature");
+            json.name("id").value("feature-" + f);
+            json.name("keyword").value("Feature");
+            json.name("name").value("Feature number " + f);
+            json.name("line").value(1);
+            json.name("elements").beginArray();
+            for (int s = 0; s < scenariosPerFeature; s++) {
+                writeScenario(json, f, s, random.nextDouble() < failureRate);
+            }
+            json.endArray();
+            json.endObject();
+        }
+        json.endArray();
+        json.flush();
+    }
+
+    private void writeScenario(JsonWriter json, int feature, int scenario, boolean failed) throws IOException {
+        json.beginObject();
+        json.name("id").value("feature-" + feature + ";scenario-" + scenario);
+        json.name("keyword").value("Scenario");
+        json.name("name").value("Scenario number " + scenario);
+        json.name("line").value(3 + scenario * (stepsPerScenario + 2));
+        json.name("type").value("scenario");
+        json.name("steps").beginArray();
+        for (int step = 0; step < stepsPerScenario; step++) {
+            final String status = !failed ? "passed" : step == stepsPerScenario - 1 ? "failed" : "passed";
+            json.beginObject();
+            json.name("keyword").value("Given ");
+            json.name("name").value("step " + step + " of scenario " + scenario);
+            json.name("line").value(4 + scenario * (stepsPerScenario + 2) + step);
+            json.name("match").beginObject().name("location").value("Steps.step" + step + "()").endObject();
+            json.name("result").beginObject();
+            json.name("duration").value(1_000_000L + step);
+            json.name("status").value(status);
+            if ("failed".equals(status)) {
+                json.name("error_message").value("java.lang.AssertionError: expected true\n\tat Steps.step" + step + "(Steps.java)");
+            }
+            json.endObject();
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+    }
+
+    /**
+     * @return a parsed result of the same shape without writing a report, for rendering benchmarks
+     */
+    CucumberResult result() {
+        final Random random = new Random(42);
+        final List<FeatureResult> results = new ArrayList<>(features);
+        int failed = 0;
+        for (int f = 0; f < features; f++) {
+            int failedScenarios = 0;
+            for (int s = 0; s < scenariosPerFeature; s++) {
+                if (random.nextDouble() < failureRate) {
+                    failedScenarios = failedScenarios + 1;
+                }
+            }
+            failed = failed + failedScenarios;
+            results.add(new FeatureResult("features/module-" + (f % 100) + "/feature-" + f + ".feature", "Feature number " + f,
+                    FeatureTally.percentage(scenariosPerFeature, failedScenarios)));
+        }
+        final int total = features * scenariosPerFeature;
+        return new CucumberResult(results, total, FeatureTally.percentage(total, failed));
+    }
+}
@@ -0,0 +1,212 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import io.airlift.compress.zstd.ZstdOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class CucumberReportParserTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void canParseSuccessfulReport() throws IOException {
+        CucumberResult result = parse("successful-result.json", false);
+        assertEquals(8, result.getTotalScenarios());
+        assertEquals(8, result.getTotalFeatures());
+        assertEquals(100, result.getPassPercentage());
+        assertEquals("Validate Confluence Home Page", result.getFeatureResults().get(0).getDisplayName());
+    }
+
+    @Test
+    public void canParseFailedReport() throws IOException {
+        CucumberResult result = parse("failed-result.json", false);
+        assertEquals(8, result.getTotalScenarios());
+        assertEquals(8, result.getTotalFeatures());
+        assertEquals(87, result.getPassPercentage());
+        assertEquals(0, result.getFeatureResults().get(0).getPassPercentage());
+    }
+
+    @Test
+    public void canHideSuccessfulFeatures() throws IOException {
+        CucumberResult result = parse("failed-result.json", true);
+        assertEquals(8, result.getTotalScenarios());
+        assertEquals(1, result.getTotalFeatures());
+        assertEquals(87, result.getPassPercentage());
+    }
+
+    @Test
+    public void skipsUnusedSubtreesRegardlessOfFieldOrder() throws IOException {
+        String report = "[{\"elements\":[{\"steps\":[{\"embeddings\":[{\"data\":\"AAAA\",\"mime_type\":\"image/png\"}],"
+                + "\"output\":[\"log\"],\"doc_string\":{\"value\":\"{]\"},\"result\":{\"status\":\"failed\"}},"
+                + "{\"result\":{\"status\":\"passed\"}}],\"type\":\"scenario\"},"
+                + "{\"type\":\"scenario\",\"steps\":[{\"result\":{\"duration\":1,\"status\":\"passed\"}}]}],"
+                + "\"name\":\"Feature\",\"uri\":\"features/a.feature\"}]";
+        CucumberResult result = new CucumberReportParser(false).parse(new StringReader(report));
+        assertEquals(2, result.getTotalScenarios());
+        assertEquals(50, result.getPassPercentage());
+        assertEquals("features/a.feature", result.getFeatureResults().get(0).getUri());
+        assertEquals("Feature", result.getFeatureResults().get(0).getDisplayName());
+    }
+
+    @Test
+    public void aggregatesStepDurations() throws IOException {
+        String report = "[{\"uri\":\"a.feature\",\"name\":\"A\",\"elements\":["
+                + "{\"type\":\"background\",\"steps\":[{\"result\":{\"status\":\"passed\",\"duration\":1000000000}}]},"
+                + "{\"type\":\"scenario\",\"name\":\"slow\",\"steps\":[{\"result\":{\"status\":\"failed\",\"duration\":4000000000}},"
+                + "{\"result\":{\"status\":\"skipped\",\"duration\":0}}]},"
+                + "{\"type\":\"scenario\",\"name\":\"fast\",\"steps\":[{\"result\":{\"duration\":2.0E8,\"status\":\"passed\"}}]}]},"
+                + "{\"uri\":\"b.feature\",\"name\":\"B\",\"elements\":[{\"type\":\"scenario\",\"name\":\"untimed\","
+                + "\"steps\":[{\"result\":{\"status\":\"passed\"}}]}]}]";
+        CucumberResult result = new CucumberReportParser(false).parse(new StringReader(report));
+        assertEquals(66, result.getPassPercentage());
+
+        FeatureResult a = result.getFeatureResults().get(0);
+        assertEquals(5_200_000_000L, a.getDurationNanos());
+        assertEquals(2, a.getDurations().getCount());
+        assertEquals(5_000_000_000L, a.getDurations().percentileNanos(0.95));
+        assertEquals(250_000_000L, a.getDurations().percentileNanos(0.5));
+        assertNull(result.getFeatureResults().get(1).getDurations());
+
+        assertEquals(2, result.getSlowestScenarios().size());
+        assertEquals("slow", result.getSlowestScenarios().get(0).getScenario());
+        assertEquals("A", result.getSlowestScenarios().get(0).getFeature());
+        // the background is part of the scenario that follows it
+        assertEquals(5_000_000_000L, result.getSlowestScenarios().get(0).getNanos());
+        assertEquals(200_000_000L, result.getSlowestScenarios().get(1).getNanos());
+    }
+
+    @Test
+    public void mergedRerunsKeepSlowestRun() throws Exception {
+        File shards = temporaryFolder.newFolder("timed");
+        write(new File(shards, "cucumber-1.json"), "[{\"uri\":\"a.feature\",\"name\":\"A\",\"elements\":["
+                + "{\"id\":\"a;1\",\"type\":\"scenario\",\"steps\":[{\"result\":{\"status\":\"failed\",\"duration\":3000000000}}]}]}]");
+        write(new File(shards, "cucumber-2.json"), "[{\"uri\":\"a.feature\",\"name\":\"A\",\"elements\":["
+                + "{\"id\":\"a;1\",\"type\":\"scenario\",\"steps\":[{\"result\":{\"status\":\"passed\",\"duration\":1000000000}}]}]}]");
+
+        CucumberResult result = new CucumberReportCallable("timed/*.json", false).invoke(temporaryFolder.getRoot(), null);
+        assertEquals(100, result.getPassPercentage());
+        assertEquals(1, result.getFeatureResults().get(0).getDurations().getCount());
+        assertEquals(1, result.getSlowestScenarios().size());
+        assertEquals(3_000_000_000L, result.getSlowestScenarios().get(0).getNanos());
+    }
+
+    @Test
+    public void failingBackgroundFailsTheScenarioThatFollows() throws Exception {
+        String report = "[{\"uri\":\"a.feature\",\"name\":\"A\",\"elements\":["
+                + "{\"type\":\"background\",\"steps\":[{\"result\":{\"status\":\"failed\"}}]},"
+                + "{\"id\":\"a;1\",\"type\":\"scenario\",\"steps\":[{\"result\":{\"status\":\"skipped\"}}]},"
+                + "{\"type\":\"background\",\"steps\":[{\"result\":{\"status\":\"passed\"}}]},"
+                + "{\"id\":\"a;2\",\"type\":\"scenario\",\"steps\":[{\"result\":{\"status\":\"passed\"}}]}]}]";
+        CucumberResult single = new CucumberReportParser(false).parse(new StringReader(report));
+        assertEquals(2, single.getTotalScenarios());
+        assertEquals(50, single.getPassPercentage());
+
+        write(new File(temporaryFolder.newFolder("background"), "cucumber.json"), report);
+        CucumberResult merged = new CucumberReportCallable("background/*.json", false).invoke(temporaryFolder.getRoot(), null);
+        assertEquals(2, merged.getTotalScenarios());
+        assertEquals(50, merged.getPassPercentage());
+    }
+
+    @Test
+    public void toleratesEmptyReport() throws IOException {
+        CucumberResult result = new CucumberReportParser(false).parse(new StringReader("[]"));
+        assertEquals(0, result.getTotalScenarios());
+        assertEquals(100, result.getPassPercentage());
+    }
+
+    @Test
+    public void callableReturnsSerializableSummary() throws Exception {
+        CucumberResult result = new CucumberReportCallable("failed-result.json", true).invoke(new File("src/test/resources"), null);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(result);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            CucumberResult copy = (CucumberResult) in.readObject();
+            assertEquals(87, copy.getPassPercentage());
+            assertEquals(1, copy.getTotalFeatures());
+        }
+    }
+
+    @Test
+    public void canMergeShardsAndReruns() throws Exception {
+        File shards = temporaryFolder.newFolder("cucumber", "shards");
+        write(new File(shards, "cucumber-1.json"), "[" + feature("a.feature", "a;1", "passed", "a;2", "failed") + ","
+                + feature("b.feature", "b;1", "passed") + "]");
+        write(new File(shards, "cucumber-2.json"), "[" + feature("c.feature", "c;1", "failed") + "]");
+        // rerun of the failed scenario in a.feature, now passing
+        write(new File(temporaryFolder.getRoot(), "cucumber/rerun.json"), "[" + feature("a.feature", "a;2", "passed") + "]");
+
+        CucumberResult result = new CucumberReportCallable("cucumber/**/*.json", false).invoke(temporaryFolder.getRoot(), null);
+        assertEquals(4, result.getTotalScenarios());
+        assertEquals(3, result.getTotalFeatures());
+        assertEquals(75, result.getPassPercentage());
+        assertEquals(100, result.getFeatureResults().get(0).getPassPercentage());
+    }
+
+    @Test
+    public void canParseGzipReport() throws Exception {
+        File report = temporaryFolder.newFile("cucumber.json.gz");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(report))) {
+            Files.copy(new File("src/test/resources/failed-result.json").toPath(), out);
+        }
+        CucumberResult result = new CucumberReportCallable("cucumber.json.gz", false).invoke(temporaryFolder.getRoot(), null);
+        assertEquals(8, result.getTotalScenarios());
+        assertEquals(87, result.getPassPercentage());
+        assertEquals(report.length(), result.getReportBytes());
+    }
+
+    @Test
+    public void canParseZstdReportsMatchedByGlob() throws Exception {
+        File shards = temporaryFolder.newFolder("zstd");
+        try (OutputStream out = new ZstdOutputStream(new FileOutputStream(new File(shards, "cucumber-1.json.zst")))) {
+            out.write(("[" + feature("a.feature", "a;1", "passed", "a;2", "failed") + "]").getBytes(StandardCharsets.UTF_8));
+        }
+        write(new File(shards, "cucumber-2.json"), "[" + feature("b.feature", "b;1", "passed") + "]");
+
+        CucumberResult result = new CucumberReportCallable("zstd/*.json*", false).invoke(temporaryFolder.getRoot(), null);
+        assertEquals(3, result.getTotalScenarios());
+        assertEquals(2, result.getTotalFeatures());
+        assertEquals(66, result.getPassPercentage());
+    }
+
+    @Test(expected = IOException.class)
+    public void failsWhenGlobMatchesNothing() throws Exception {
+        new CucumberReportCallable("missing/*.json", false).invoke(temporaryFolder.getRoot(), null);
+    }
+
+    private static String feature(String uri, String... scenarios) {
+        StringBuilder s = new StringBuilder("{\"uri\":\"" + uri + "\",\"name\":\"" + uri + "\",\"elements\":[");
+        for (int i = 0; i < scenarios.length; i += 2) {
+            if (i > 0) {
+                s.append(",");
+            }
+            s.append("{\"id\":\"").append(scenarios[i]).append("\",\"type\":\"scenario\",\"steps\":[{\"result\":{\"status\":\"")
+                    .append(scenarios[i + 1]).append("\"}}]}");
+        }
+        return s.append("]}").toString();
+    }
+
+    private static void write(File file, String content) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(content);
+        }
+    }
+
+    private CucumberResult parse(String filename, boolean hideSuccessfulResults) throws IOException {
+        File report = new File("src/test/resources", filename);
+        assertTrue(report.exists());
+        try (Reader reader = new InputStreamReader(new FileInputStream(report), StandardCharsets.UTF_8)) {
+            return new CucumberReportParser(hideSuccessfulResults).parse(reader);
+        }
+    }
+}
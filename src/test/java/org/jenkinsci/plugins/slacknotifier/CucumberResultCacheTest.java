@@ -0,0 +1,61 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class CucumberResultCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void evictsLeastRecentlyUsedWhenOverBudget() {
+        CucumberResult result = result("features/a.feature");
+        long size = CucumberResultCache.estimateSize("a", result);
+        CucumberResultCache cache = new CucumberResultCache(2 * size);
+        cache.put("a", result);
+        cache.put("b", result);
+        assertSame(result, cache.get("a"));
+        cache.put("c", result);
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(2, cache.size());
+        assertEquals(2 * size, cache.getBytes());
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void fingerprintChangesWithReportContent() throws Exception {
+        File shards = temporaryFolder.newFolder("cucumber");
+        File report = new File(shards, "cucumber-1.json");
+        Files.write(report.toPath(), "[]".getBytes(StandardCharsets.UTF_8));
+        long modified = report.lastModified();
+
+        String before = new ReportFingerprintCallable("cucumber/*.json", true).invoke(temporaryFolder.getRoot(), null);
+        assertEquals(before, new ReportFingerprintCallable("cucumber/*.json", true).invoke(temporaryFolder.getRoot(), null));
+
+        // same size and timestamp, only the content hash notices
+        Files.write(report.toPath(), "{}".getBytes(StandardCharsets.UTF_8));
+        assertTrue(report.setLastModified(modified));
+        assertNotEquals(before, new ReportFingerprintCallable("cucumber/*.json", true).invoke(temporaryFolder.getRoot(), null));
+
+        String withoutHash = new ReportFingerprintCallable("cucumber/*.json", false).invoke(temporaryFolder.getRoot(), null);
+        Files.write(new File(shards, "cucumber-2.json").toPath(), "[]".getBytes(StandardCharsets.UTF_8));
+        assertNotEquals(withoutHash, new ReportFingerprintCallable("cucumber/*.json", false).invoke(temporaryFolder.getRoot(), null));
+    }
+
+    private static CucumberResult result(String uri) {
+        return new CucumberResult(Collections.singletonList(new FeatureResult(uri, uri, 100)), 1, 100);
+    }
+}
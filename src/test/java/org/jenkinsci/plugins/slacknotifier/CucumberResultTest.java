@@ -2,8 +2,13 @@ package org.jenkinsci.plugins.slacknotifier;
 
 import org.junit.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -28,6 +33,70 @@ public class CucumberResultTest {
         assertTrue(header.contains("Build: <http://localhost:8080/job/test-job/1/cucumber-html-reports/|1>"));
     }
 
+    @Test
+    public void listsOnlyTheWorstFeatures() {
+        List<FeatureResult> features = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            features.add(new FeatureResult("features/" + i + ".feature", "Feature " + i, i == 150 ? 0 : 100 - i % 7));
+        }
+        String message = new CucumberResult(features, 200, 97).toSlackMessage("test-job", 1, "http://localhost:8080/", null, null,
+                new SlackMessageLimits(10, 100000));
+        assertTrue(message.contains("\u2026and 190 more"));
+        assertTrue(message.contains("report-feature_150_"));
+        assertTrue(message.contains("|Feature 6>"));
+        assertFalse(message.contains("|Feature 0>"));
+        assertEquals(10, message.split("\\|Feature ").length - 1);
+    }
+
+    @Test
+    public void staysWithinPayloadBudget() {
+        List<FeatureResult> features = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            features.add(new FeatureResult("features/" + i + ".feature", "Caf\u00e9 \"quoted\"\t\u2028 " + i, i % 100));
+        }
+        CucumberResult result = new CucumberResult(features, 500, 50);
+        for (int budget : new int[]{2000, 5000, 20000}) {
+            String message = result.toSlackMessage("test-job", 1, "http://localhost:8080/", null, null, new SlackMessageLimits(1000, budget));
+            assertTrue(message.getBytes(StandardCharsets.UTF_8).length <= budget);
+            assertTrue(message.contains("more"));
+        }
+
+        String everything = result.toSlackMessage("test-job", 1, "http://localhost:8080/", null, null, SlackMessageLimits.UNLIMITED);
+        int size = everything.getBytes(StandardCharsets.UTF_8).length;
+        assertEquals(everything, result.toSlackMessage("test-job", 1, "http://localhost:8080/", null, null,
+                new SlackMessageLimits(500, size + 64)));
+    }
+
+    @Test
+    public void largeDeltaStaysWithinPayloadBudget() {
+        List<FeatureResult> previous = new ArrayList<>();
+        List<FeatureResult> current = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            String name = "A feature with a rather long name that keeps failing in every build " + i;
+            previous.add(new FeatureResult("features/" + i + ".feature", name, i % 2 == 0 ? 0 : 100));
+            current.add(new FeatureResult("features/" + i + ".feature", name, i % 3 == 0 ? 100 : 0));
+        }
+        CucumberResult result = new CucumberResult(current, 2000, 33);
+        CucumberDelta delta = CucumberDelta.between(new CucumberResult(previous, 2000, 50), result);
+        StringBuilder extra = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            extra.append("Caf\u00e9 ");
+        }
+
+        for (int budget : new int[]{3000, 10000, 30000}) {
+            String message = result.toSlackMessage("test-job", 1, "http://localhost:8080/", extra.toString(), delta,
+                    new SlackMessageLimits(50, budget));
+            assertTrue(message.getBytes(StandardCharsets.UTF_8).length <= budget);
+            assertTrue(message.contains("Newly failing (" + delta.getNewlyFailing().size() + ")"));
+            assertTrue(message.contains("Fixed (" + delta.getFixed().size() + ")"));
+            assertTrue(message.contains("Still failing (" + delta.getStillFailing().size() + ")"));
+        }
+        // with room to spare the extra text is kept whole
+        String roomy = result.toSlackMessage("test-job", 1, "http://localhost:8080/", extra.toString(), delta,
+                new SlackMessageLimits(50, 1000000));
+        assertTrue(roomy.contains(extra.toString()));
+    }
+
     private CucumberResult successfulResult() {
         return new CucumberResult(Collections.singletonList(new FeatureResult("Dummy Test","Dummy Test", 100)), 1, 100);
     }
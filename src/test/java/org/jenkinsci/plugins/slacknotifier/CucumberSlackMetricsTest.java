@@ -0,0 +1,71 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class CucumberSlackMetricsTest {
+
+    private final CucumberSlackMetrics metrics = CucumberSlackMetrics.shared();
+
+    @Test
+    public void countsPostsRetriesAndStatuses() throws IOException {
+        long retries = metrics.getRetries();
+        long tooManyRequests = metrics.getHttpStatusCount(429);
+        long ok = metrics.getHttpStatusCount(200);
+        long delivered = metrics.getDeliverCount();
+        long payloadBytes = metrics.getPayloadBytes();
+        try (StubSlackServer slack = new StubSlackServer()) {
+            slack.enqueue(429, 0);
+            new SlackClient("http://jenkins:8080/", slack.getUrl(), false, new PooledHttpTransport(1000, 1000, 2),
+                    new SlackRateLimiter(100, 10), new SlackRetryPolicy(3, 10, 50)).postToSlack("{\"text\":\"hello\"}");
+        }
+        assertEquals(retries + 1, metrics.getRetries());
+        assertEquals(tooManyRequests + 1, metrics.getHttpStatusCount(429));
+        assertEquals(ok + 1, metrics.getHttpStatusCount(200));
+        assertEquals(delivered + 1, metrics.getDeliverCount());
+        assertEquals(payloadBytes + 2 * 16, metrics.getPayloadBytes());
+        assertTrue(metrics.getHttpStatuses().containsKey("429"));
+    }
+
+    @Test
+    public void countsStreamedPayloadBytes() throws IOException {
+        long payloadBytes = metrics.getPayloadBytes();
+        try (StubSlackServer slack = new StubSlackServer()) {
+            SlackClient client = new SlackClient("http://jenkins:8080/", slack.getUrl(), false,
+                    new PooledHttpTransport(1000, 1000, 2), new SlackRateLimiter(100, 10), new SlackRetryPolicy(3, 10, 50));
+            client.postToSlack(writer -> writer.write("{\"text\":\"caf\u00e9 \ud83e\udd52\"}"));
+            assertEquals(payloadBytes + slack.getMessages().get(0).getBytes(StandardCharsets.UTF_8).length, metrics.getPayloadBytes());
+        }
+    }
+
+    @Test
+    public void recordsReportSizes() throws Exception {
+        long bytes = metrics.getReportBytes();
+        long scenarios = metrics.getScenarios();
+        CucumberResult result = new CucumberReportCallable("failed-result.json", false).invoke(new File("src/test/resources"), null);
+        metrics.recordParse(5_000_000, result);
+        assertEquals(bytes + new File("src/test/resources/failed-result.json").length(), metrics.getReportBytes());
+        assertEquals(scenarios + 8, metrics.getScenarios());
+        assertTrue(metrics.getParseMaxMillis() >= 5);
+    }
+
+    @Test
+    public void isExposedOverJmx() throws Exception {
+        CucumberSlackMetrics.register();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            metrics.recordRender(1_000_000);
+            assertEquals(metrics.getRenderCount(), server.getAttribute(new ObjectName(CucumberSlackMetrics.OBJECT_NAME), "RenderCount"));
+        } finally {
+            CucumberSlackMetrics.unregister();
+        }
+    }
+}
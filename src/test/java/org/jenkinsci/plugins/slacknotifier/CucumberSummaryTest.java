@@ -0,0 +1,75 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CucumberSummaryTest {
+
+    @Test
+    public void summarisesFailedReport() throws IOException {
+        CucumberResult result = parse("failed-result.json");
+        CucumberSummary summary = CucumberSummary.of(result);
+        assertEquals(87, summary.getPassPercentage());
+        assertEquals(8, summary.getTotalScenarios());
+        assertEquals(1, summary.getFailedFeatures().size());
+        assertEquals(result.getFeatureResults().get(0).getDisplayName(), summary.getFailedFeatures().get(0));
+        assertFalse(summary.isSuccessful());
+    }
+
+    @Test
+    public void summarisesSuccessfulReport() throws IOException {
+        CucumberSummary summary = CucumberSummary.of(parse("successful-result.json"));
+        assertEquals(100, summary.getPassPercentage());
+        assertTrue(summary.getFailedFeatures().isEmpty());
+        assertTrue(summary.isSuccessful());
+    }
+
+    @Test
+    public void namesOnlyTheFirstFailedFeatures() {
+        List<FeatureResult> features = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            features.add(new FeatureResult("features/" + i + ".feature", "Feature " + i, i % 2 == 0 ? 0 : 100));
+        }
+        CucumberSummary summary = CucumberSummary.of(new CucumberResult(features, 1000, 50), 3);
+        assertEquals(Arrays.asList("Feature 0", "Feature 2", "Feature 4"), summary.getFailedFeatures());
+        assertEquals(500, summary.getFailedFeatureCount());
+        assertEquals("Scenarios: 1000, Pass: 50 %, Failed: Feature 0, Feature 2, Feature 4 \u2026and 497 more", summary.toString());
+    }
+
+    @Test
+    public void survivesSerialization() throws Exception {
+        CucumberSummary summary = new CucumberSummary(50, 4, Arrays.asList("Login", "Search"));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(summary);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            CucumberSummary read = (CucumberSummary) in.readObject();
+            assertEquals(50, read.getPassPercentage());
+            assertEquals(4, read.getTotalScenarios());
+            assertEquals(Arrays.asList("Login", "Search"), read.getFailedFeatures());
+            assertEquals(2, read.getFailedFeatureCount());
+            assertEquals("Scenarios: 4, Pass: 50 %, Failed: Login, Search", read.toString());
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void failedFeaturesCannotBeChanged() {
+        new CucumberSummary(100, 1, Collections.emptyList()).getFailedFeatures().add("Login");
+    }
+
+    private CucumberResult parse(String filename) throws IOException {
+        File report = new File("src/test/resources", filename);
+        try (Reader reader = new InputStreamReader(new FileInputStream(report), StandardCharsets.UTF_8)) {
+            return new CucumberReportParser(false).parse(reader);
+        }
+    }
+}
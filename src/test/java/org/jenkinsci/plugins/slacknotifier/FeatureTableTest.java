@@ -0,0 +1,86 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FeatureTableTest {
+
+    @Test
+    public void keepsEveryValueOfTheFeatures() {
+        DurationHistogram durations = new DurationHistogram();
+        durations.add(1_000_000L);
+        FeatureTable table = FeatureTable.of(Arrays.asList(
+                new FeatureResult("services/payments/features/refund.feature", "Refund", 50, 42L, durations),
+                new FeatureResult("services/payments/features/charge.feature", "Charge", 100),
+                new FeatureResult("top-level.feature", null, 0),
+                new FeatureResult(null, "Refund", 75)));
+
+        assertEquals(4, table.size());
+        assertEquals("services/payments/features/refund.feature", table.get(0).getUri());
+        assertEquals("Refund", table.get(0).getDisplayName());
+        assertEquals(50, table.get(0).getPassPercentage());
+        assertEquals(42L, table.get(0).getDurationNanos());
+        assertEquals(durations, table.get(0).getDurations());
+        assertEquals("services/payments/features/charge.feature", table.getUri(1));
+        assertNull(table.getDurations(1));
+        assertEquals("top-level.feature", table.getUri(2));
+        assertNull(table.getDisplayName(2));
+        assertNull(table.getUri(3));
+        assertEquals(75, table.getPassPercentage(3));
+        assertSame(table, FeatureTable.of(table));
+    }
+
+    @Test
+    public void storesSharedDirectoriesOnce() throws IOException {
+        List<FeatureResult> features = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            features.add(new FeatureResult("monorepo/services/module-" + (i % 10) + "/src/test/resources/features/feature-" + i + ".feature",
+                    "Feature number " + i, i % 101));
+        }
+        CucumberResult list = new CucumberResult(features, 20000, 99);
+        FeatureTable table = list.getFeatureTable();
+
+        assertEquals(features.size(), table.size());
+        for (int i = 0; i < features.size(); i += 997) {
+            assertEquals(features.get(i).getUri(), table.getUri(i));
+            assertEquals(features.get(i).getDisplayName(), table.getDisplayName(i));
+            assertEquals(features.get(i).getPassPercentage(), table.getPassPercentage(i));
+        }
+
+        long characters = 0;
+        for (FeatureResult feature : features) {
+            characters = characters + feature.getUri().length() + feature.getDisplayName().length();
+        }
+        assertTrue(table.estimateSize() < characters);
+        assertTrue(serializedSize(table) < serializedSize(new ArrayList<>(features)) * 2 / 3);
+    }
+
+    @Test
+    public void rendersTheSameMessage() {
+        List<FeatureResult> features = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            features.add(new FeatureResult("features/" + (i % 3) + "/" + i + ".feature", "Feature " + i, i % 100));
+        }
+        CucumberResult result = new CucumberResult(features, 300, 50);
+        String message = result.toSlackMessage("job", 1, "http://jenkins/", null);
+        assertEquals(message, new CucumberResult(new ArrayList<>(result.getFeatureResults()), 300, 50)
+                .toSlackMessage("job", 1, "http://jenkins/", null));
+        assertTrue(message.contains("|Feature 0>"));
+    }
+
+    private static int serializedSize(Object o) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(o);
+        }
+        return bytes.size();
+    }
+}
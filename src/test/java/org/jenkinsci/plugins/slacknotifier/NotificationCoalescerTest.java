@@ -0,0 +1,78 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class NotificationCoalescerTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final NotificationCoalescer coalescer = new NotificationCoalescer(() -> scheduler);
+    private final List<List<CucumberDigest.Entry>> flushed = Collections.synchronizedList(new ArrayList<>());
+
+    @After
+    public void stopScheduler() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void coalescesResultsWithinWindow() throws InterruptedException {
+        coalescer.submit("channel\nproject", entry("main #1", 100), 200, flushed::add);
+        coalescer.submit("channel\nproject", entry("feature-x #4", 50), 200, flushed::add);
+        coalescer.submit("channel\nother", entry("other #9", 100), 200, flushed::add);
+        assertEquals(2, coalescer.getOpenWindows());
+
+        awaitFlushes(2);
+        assertEquals(0, coalescer.getOpenWindows());
+        List<CucumberDigest.Entry> project = flushed.get(0).size() == 2 ? flushed.get(0) : flushed.get(1);
+        assertEquals("main #1", project.get(0).getLabel());
+        assertEquals("feature-x #4", project.get(1).getLabel());
+    }
+
+    @Test
+    public void flushesFullWindowEarly() {
+        for (int i = 0; i < NotificationCoalescer.MAX_BATCH; i++) {
+            coalescer.submit("channel\nproject", entry("main #" + i, 100), 60000, flushed::add);
+        }
+        assertEquals(1, flushed.size());
+        assertEquals(NotificationCoalescer.MAX_BATCH, flushed.get(0).size());
+        assertEquals(0, coalescer.getOpenWindows());
+    }
+
+    @Test
+    public void digestCombinesPassPercentageByScenarios() {
+        List<CucumberDigest.Entry> entries = new ArrayList<>();
+        entries.add(new CucumberDigest.Entry("main #1", "http://jenkins/job/p/job/main/1/",
+                new CucumberResult(Collections.emptyList(), 30, 100), "{}"));
+        entries.add(new CucumberDigest.Entry("pr-1 #2", "http://jenkins/job/p/job/pr-1/2/",
+                new CucumberResult(Collections.emptyList(), 10, 60), "{}"));
+        CucumberDigest digest = new CucumberDigest("project", entries);
+        assertEquals(40, digest.getTotalScenarios());
+        assertEquals(90, digest.getPassPercentage());
+
+        String message = digest.toSlackMessage();
+        assertTrue(message.contains("<http://jenkins/job/p/job/pr-1/2/|pr-1 #2>"));
+        assertTrue(message.contains("90 %"));
+        assertTrue(message.contains("danger"));
+    }
+
+    private void awaitFlushes(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (flushed.size() < count && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        assertEquals(count, flushed.size());
+    }
+
+    private static CucumberDigest.Entry entry(String label, int passPercentage) {
+        return new CucumberDigest.Entry(label, "http://jenkins/", new CucumberResult(Collections.emptyList(), 1, passPercentage), "{}");
+    }
+}
@@ -0,0 +1,185 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class NotificationOutboxTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void keepsUnacknowledgedMessagesAcrossRestarts() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        NotificationOutbox outbox = outbox(directory);
+        assertTrue(outbox.add("1", "http://slack/a", "{\"text\":\"one\"}"));
+        assertTrue(outbox.add("2", "http://slack/a", "{\"text\":\"two\"}"));
+        assertFalse(outbox.add("2", "http://slack/a", "{\"text\":\"two\"}"));
+        outbox.ack("1");
+
+        NotificationOutbox restarted = outbox(directory);
+        List<NotificationOutbox.Record> replayed = replay(restarted);
+        assertEquals(1, restarted.getPendingCount());
+        assertEquals(1, replayed.size());
+        assertEquals("2", replayed.get(0).getId());
+        assertEquals("{\"text\":\"two\"}", replayed.get(0).getPayload());
+    }
+
+    @Test
+    public void truncatesOnceEverythingIsDelivered() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        NotificationOutbox outbox = outbox(directory);
+        outbox.add("1", "http://slack/a", "{}");
+        outbox.deliver("1", () -> { });
+        assertEquals(0, outbox.getPendingCount());
+        assertEquals(0, log(directory).length());
+    }
+
+    @Test
+    public void compactsAcknowledgedMessages() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        NotificationOutbox outbox = outbox(directory);
+        outbox.add("keep", "http://slack/a", "{}");
+        for (int i = 0; i < 2000; i++) {
+            outbox.add("message-" + i, "http://slack/a", "{\"text\":\"" + i + "\"}");
+            outbox.ack("message-" + i);
+        }
+        assertEquals(1, outbox.getPendingCount());
+        assertTrue(Files.readAllLines(log(directory).toPath()).size() < 1000);
+        assertEquals(1, replay(outbox(directory)).size());
+    }
+
+    @Test
+    public void keepsMessageWhenDeliveryFails() throws IOException {
+        NotificationOutbox outbox = outbox(temporaryFolder.newFolder());
+        outbox.add("1", "http://slack/a", "{}");
+        outbox.deliver("1", () -> {
+            throw new RuntimeException("Received HTTP Status code [503] while posting to slack");
+        });
+        assertTrue(outbox.isPending("1"));
+        assertEquals(1, replay(outbox).size());
+    }
+
+    @Test
+    public void dropsMessageSlackRejects() throws IOException {
+        NotificationOutbox outbox = outbox(temporaryFolder.newFolder());
+        outbox.add("1", "http://slack/a", "{}");
+        outbox.deliver("1", () -> {
+            throw new SlackClient.StatusException(404);
+        });
+        assertFalse(outbox.isPending("1"));
+    }
+
+    @Test
+    public void dropsMessageAfterTooManyAttempts() throws IOException {
+        NotificationOutbox outbox = outbox(temporaryFolder.newFolder());
+        outbox.add("1", "http://slack/a", "{}");
+        for (int i = 0; i < NotificationOutbox.MAX_ATTEMPTS; i++) {
+            assertTrue(outbox.isPending("1"));
+            outbox.deliver("1", () -> {
+                throw new SlackClient.StatusException(503);
+            });
+        }
+        assertFalse(outbox.isPending("1"));
+    }
+
+    @Test
+    public void replaysPagesOfMessagesThatAreDue() throws IOException {
+        NotificationOutbox outbox = outbox(temporaryFolder.newFolder());
+        for (int i = 0; i < 5; i++) {
+            outbox.add(String.valueOf(i), "http://slack/a", "{}");
+        }
+        long now = System.currentTimeMillis();
+        List<NotificationOutbox.Record> page = new ArrayList<>();
+        assertEquals(2, outbox.replay(2, now, page::add));
+        assertEquals("0", page.get(0).getId());
+
+        outbox.deliver("0", () -> {
+            throw new SlackClient.StatusException(503);
+        });
+        page.clear();
+        assertEquals(4, outbox.replay(10, now, page::add));
+        assertEquals("1", page.get(0).getId());
+        // due again once the pause after the failure is over
+        assertEquals(5, outbox.replay(10, now + TimeUnit.MINUTES.toMillis(2), record -> { }));
+    }
+
+    @Test
+    public void ignoresRecordTornByCrash() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        NotificationOutbox outbox = outbox(directory);
+        outbox.add("1", "http://slack/a", "{}");
+        Files.write(log(directory).toPath(), "{\"op\":\"add\",\"id\":\"2\",\"pay".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        assertEquals(1, outbox(directory).getPendingCount());
+    }
+
+    @Test
+    public void keepsMessageAddedAfterTornRecord() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        outbox(directory).add("1", "http://slack/a", "{}");
+        Files.write(log(directory).toPath(), "{\"op\":\"add\",\"id\":\"2\",\"pay".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        NotificationOutbox reopened = outbox(directory);
+        assertTrue(reopened.add("3", "http://slack/a", "{\"text\":\"three\"}"));
+
+        NotificationOutbox reloaded = outbox(directory);
+        assertEquals(2, reloaded.getPendingCount());
+        assertTrue(reloaded.isPending("1"));
+        assertTrue(reloaded.isPending("3"));
+        assertEquals("{\"text\":\"three\"}", replay(reloaded).get(1).getPayload());
+    }
+
+    @Test
+    public void storesWebhookUrlEncrypted() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        outbox(directory).add("1", "https://hooks.slack.com/services/T0/B0/secret", "{}");
+        assertFalse(new String(Files.readAllBytes(log(directory).toPath()), StandardCharsets.UTF_8).contains("hooks.slack.com"));
+        assertEquals("https://hooks.slack.com/services/T0/B0/secret", replay(outbox(directory)).get(0).getUrl());
+    }
+
+    @Test
+    public void idempotencyKeyDependsOnWebhookAndPayload() {
+        String key = NotificationOutbox.idempotencyKey("http://slack/a", "{}");
+        assertEquals(key, NotificationOutbox.idempotencyKey("http://slack/a", "{}"));
+        assertNotEquals(key, NotificationOutbox.idempotencyKey("http://slack/b", "{}"));
+        assertNotEquals(key, NotificationOutbox.idempotencyKey("http://slack/a", "{ }"));
+    }
+
+    // Secret needs a running Jenkins, this stands in for it
+    private static NotificationOutbox outbox(File directory) {
+        return new NotificationOutbox(directory, new NotificationOutbox.UrlCodec() {
+            @Override
+            public String encode(String url) {
+                return "{" + Base64.getEncoder().encodeToString(url.getBytes(StandardCharsets.UTF_8)) + "}";
+            }
+
+            @Override
+            public String decode(String stored) {
+                return new String(Base64.getDecoder().decode(stored.substring(1, stored.length() - 1)), StandardCharsets.UTF_8);
+            }
+        });
+    }
+
+    private static List<NotificationOutbox.Record> replay(NotificationOutbox outbox) throws IOException {
+        List<NotificationOutbox.Record> records = new ArrayList<>();
+        outbox.replay(records::add);
+        return records;
+    }
+
+    private static File log(File directory) {
+        return new File(directory, "outbox.log");
+    }
+}
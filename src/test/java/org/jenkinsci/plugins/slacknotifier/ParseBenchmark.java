@@ -0,0 +1,57 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Parsing a report from disk, with the streaming parser and with the tree based {@code processResults}.
+ */
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int features;
+
+    @Param({"10"})
+    public int scenariosPerFeature;
+
+    private File report;
+
+    @Setup(Level.Trial)
+    public void writeReport() throws IOException {
+        report = File.createTempFile("cucumber-", ".json");
+        new CucumberReportGenerator(features, scenariosPerFeature, 3, 0.01).write(report);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteReport() throws IOException {
+        Files.deleteIfExists(report.toPath());
+    }
+
+    @Benchmark
+    public CucumberResult streaming(PeakHeapCounter heap) throws IOException {
+        try (InputStream stream = Files.newInputStream(report.toPath())) {
+            return new CucumberReportParser(false).parse(stream);
+        }
+    }
+
+    @Benchmark
+    public CucumberResult tree(PeakHeapCounter heap) throws IOException {
+        try (Reader reader = Files.newBufferedReader(report.toPath(), StandardCharsets.UTF_8)) {
+            return new SlackClient("http://jenkins/", "http://slack/", false).processResults(JsonParser.parseReader(reader));
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+ * Reports the peak heap used during each benchmark iteration next to the JMH scores, as the sum of the peak usage
+ * of every heap memory pool.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class PeakHeapCounter {
+
+    public long peakHeapMegabytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+        peakHeapMegabytes = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void record() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak = peak + pool.getPeakUsage().getUsed();
+            }
+        }
+        peakHeapMegabytes = peak / (1024 * 1024);
+    }
+}
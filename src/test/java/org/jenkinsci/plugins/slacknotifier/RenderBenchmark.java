@@ -0,0 +1,36 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Rendering a parsed result to the slack message, which covers the feature fields and report file names, with every
+ * feature listed and within the default message limits.
+ */
+@State(Scope.Benchmark)
+public class RenderBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int features;
+
+    private CucumberResult result;
+
+    @Setup(Level.Trial)
+    public void createResult() {
+        result = new CucumberReportGenerator(features, 10, 5, 0.01).result();
+    }
+
+    @Benchmark
+    public String toSlackMessage(PeakHeapCounter heap) {
+        return result.toSlackMessage("benchmark", 1, "http://jenkins/", null, null, SlackMessageLimits.UNLIMITED);
+    }
+
+    @Benchmark
+    public String toSlackMessageWithinLimits(PeakHeapCounter heap) {
+        return result.toSlackMessage("benchmark", 1, "http://jenkins/", null, null, SlackMessageLimits.DEFAULT);
+    }
+}
@@ -0,0 +1,113 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.*;
+
+public class ReportTailTest {
+
+    private static final String FEATURE_A = "{\"uri\":\"a.feature\",\"name\":\"A } [\\\" {\",\"elements\":["
+            + "{\"type\":\"scenario\",\"steps\":[{\"result\":{\"status\":\"passed\"}}]},"
+            + "{\"type\":\"scenario\",\"steps\":[{\"result\":{\"status\":\"failed\"}}]}]}";
+    private static final String FEATURE_B = "{\"uri\":\"b.feature\",\"elements\":["
+            + "{\"type\":\"scenario\",\"steps\":[{\"result\":{\"status\":\"passed\"}}]}]}";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void countsJsonFeaturesOnceTheyAreComplete() throws IOException {
+        File report = temporaryFolder.newFile("cucumber.json");
+        ReportTail tail = new ReportTail();
+        assertEquals(0, tail.advance(report));
+
+        append(report, "[\n  " + FEATURE_A.substring(0, 40));
+        tail.advance(report);
+        assertEquals(0, tail.getScenarios());
+
+        append(report, FEATURE_A.substring(40) + ",\n  " + FEATURE_B.substring(0, 20));
+        tail.advance(report);
+        assertEquals(2, tail.getScenarios());
+        assertEquals(1, tail.getFailed());
+        assertFalse(tail.isFinished());
+
+        // only the rest of the second feature and the closing bracket are read
+        append(report, FEATURE_B.substring(20) + "\n]\n");
+        assertEquals(FEATURE_B.length() + 2, tail.advance(report));
+        assertEquals(3, tail.getScenarios());
+        assertEquals(1, tail.getFailed());
+        assertEquals(66, tail.getPassPercentage());
+        assertTrue(tail.isFinished());
+        assertEquals(0, tail.advance(report));
+    }
+
+    @Test
+    public void countsNdjsonTestCasesAsTheyFinish() throws IOException, ClassNotFoundException {
+        File report = temporaryFolder.newFile("cucumber.ndjson");
+        append(report, "{\"meta\":{\"protocolVersion\":\"22.0.0\"}}\n"
+                + "{\"testCaseStarted\":{\"id\":\"1\",\"testCaseId\":\"tc1\",\"attempt\":0}}\n"
+                + "{\"testStepFinished\":{\"testCaseStartedId\":\"1\",\"testStepResult\":{\"status\":\"FAILED\"}}}\n"
+                + "{\"testCaseFinished\":{\"testCaseStartedId\":\"1\",\"willBeRetried\":true}}\n"
+                + "{\"testCaseStarted\":{\"id\":\"2\",\"testCaseId\":\"tc1\",\"attempt\":1}}\n"
+                + "{\"testStepFinished\":{\"testCaseStartedId\":\"2\",\"testStepResult\":{\"status\":\"PASSED\"}}}\n"
+                + "{\"testCaseFinished\":{\"testCaseStartedId\":\"2\",\"willBeRetried\":false}}\n"
+                + "{\"testCaseStarted\":{\"id\":\"3\",\"testCaseId\":\"tc2\",\"attempt\":0}}\n"
+                + "{\"testStepFinished\":{\"testCaseStartedId\":\"3\",\"testStepResult\":{\"status\":\"UNDEFINED\"}}}\n"
+                + "{\"testCaseFinished\":{\"testCaseSta");
+        ReportTail tail = new ReportTail();
+        tail.advance(report);
+        assertEquals(1, tail.getScenarios());
+        assertEquals(0, tail.getFailed());
+
+        // the totals travel to the agent and back between two looks at the report
+        tail = roundTrip(tail);
+        append(report, "rtedId\":\"3\",\"willBeRetried\":false}}\n");
+        tail.advance(report);
+        assertEquals(2, tail.getScenarios());
+        assertEquals(1, tail.getFailed());
+        assertEquals(Files.size(report.toPath()), tail.getOffset());
+        assertFalse(tail.isFinished());
+    }
+
+    @Test
+    public void exceedsFailureThresholdAfterMinimumScenarios() throws IOException {
+        File report = temporaryFolder.newFile("cucumber.json");
+        append(report, "[" + FEATURE_A + "," + FEATURE_B);
+        ReportTail tail = new ReportTail();
+        tail.advance(report);
+        assertTrue(tail.exceeds(30, 3));
+        assertFalse(tail.exceeds(34, 3));
+        assertFalse(tail.exceeds(30, 4));
+        assertFalse(new ReportTail().exceeds(10, 0));
+        assertTrue(tail.toSlackMessage("job", 7, "http://jenkins/job/job/7/", "too many failures")
+                .contains("too many failures\\nRunning: Scenarios: 3, Failed: 1"));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsFilesThatAreNoReport() throws IOException {
+        File report = temporaryFolder.newFile("cucumber.json");
+        append(report, "<html>");
+        new ReportTail().advance(report);
+    }
+
+    private static void append(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+
+    private static ReportTail roundTrip(ReportTail tail) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(tail);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (ReportTail) in.readObject();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ScheduledDigestTest {
+
+    private static final String HOOK = "https://hooks.slack.com/services/T/B/secret";
+
+    @Test
+    public void combinesBuildsOfTheSameJob() {
+        ScheduledDigest digest = new ScheduledDigest();
+        digest.record(HOOK, "team/api", "Team » api", "http://jenkins/job/team/job/api/", result(10, 100));
+        digest.record(HOOK, "team/api", "Team » api", "http://jenkins/job/team/job/api/", result(30, 60));
+        digest.record("#nightly", "team/api", "Team » api", "http://jenkins/job/team/job/api/", result(10, 100));
+        assertEquals(2, digest.getJobCount());
+
+        Map<String, List<ScheduledDigest.JobTally>> drained = digest.drain();
+        ScheduledDigest.JobTally api = drained.get(HOOK).get(0);
+        assertEquals(2, api.getBuilds());
+        assertEquals(40, api.getScenarios());
+        assertEquals(70, api.getPassPercentage());
+        assertEquals(1, drained.get("#nightly").size());
+        assertEquals(0, digest.getJobCount());
+    }
+
+    @Test
+    public void evictsTheJobThatReportedLongestAgo() {
+        ScheduledDigest digest = new ScheduledDigest();
+        for (int i = 0; i < ScheduledDigest.MAX_JOBS; i++) {
+            digest.record(HOOK, "job" + i, "Job " + i, "http://jenkins/job/job" + i + "/", result(1, 100));
+        }
+        // job0 reports again, so job1 is the eldest
+        digest.record(HOOK, "job0", "Job 0", "http://jenkins/job/job0/", result(1, 100));
+        digest.record(HOOK, "new", "New", "http://jenkins/job/new/", result(1, 100));
+        assertEquals(ScheduledDigest.MAX_JOBS, digest.getJobCount());
+        assertEquals(1, digest.getDropped());
+
+        List<ScheduledDigest.JobTally> jobs = digest.drain().get(HOOK);
+        assertEquals("Job 2", jobs.get(0).getTitle());
+        assertEquals("New", jobs.get(jobs.size() - 1).getTitle());
+    }
+
+    @Test
+    public void dropsResultsForTooManyChannels() {
+        ScheduledDigest digest = new ScheduledDigest();
+        for (int i = 0; i <= ScheduledDigest.MAX_TARGETS; i++) {
+            digest.record("#channel" + i, "job", "Job", "http://jenkins/job/job/", result(1, 100));
+        }
+        assertEquals(ScheduledDigest.MAX_TARGETS, digest.getJobCount());
+        assertEquals(1, digest.getDropped());
+    }
+
+    @Test
+    public void listsTheWorstJobs() {
+        ScheduledDigest digest = new ScheduledDigest();
+        digest.record(HOOK, "green", "Green", "http://jenkins/job/green/", result(100, 100));
+        digest.record(HOOK, "red", "Red", "http://jenkins/job/red/", result(50, 20));
+        digest.record(HOOK, "amber", "Amber", "http://jenkins/job/amber/", result(50, 80));
+
+        JsonObject message = JsonParser.parseString(ScheduledDigest.toSlackMessage(digest.drain().get(HOOK), 2)).getAsJsonObject();
+        assertEquals("Cucumber digest: 3 jobs, 3 builds, Scenarios: 200", message.get("text").getAsString());
+        JsonArray fields = message.getAsJsonArray("attachments").get(0).getAsJsonObject().getAsJsonArray("fields");
+        assertEquals("<http://jenkins/job/red/|Red> (1 build)", value(fields, 2));
+        assertEquals("20 %", value(fields, 3));
+        assertEquals("<http://jenkins/job/amber/|Amber> (1 build)", value(fields, 4));
+        assertEquals("1 more job", value(fields, 6));
+        // (100 * 100 + 50 * 20 + 50 * 80) / 200
+        assertEquals("75 %", value(fields, fields.size() - 1));
+    }
+
+    private static String value(JsonArray fields, int index) {
+        return fields.get(index).getAsJsonObject().get("value").getAsString();
+    }
+
+    private static CucumberResult result(int scenarios, int passPercentage) {
+        return new CucumberResult(Collections.singletonList(new FeatureResult("a.feature", "A", passPercentage)), scenarios, passPercentage);
+    }
+}
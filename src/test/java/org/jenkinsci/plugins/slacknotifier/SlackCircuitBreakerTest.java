@@ -0,0 +1,113 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class SlackCircuitBreakerTest {
+
+    private static final String WEBHOOK = "https://hooks.slack.com/services/T000/B000/SECRETXYZ1";
+
+    private final AtomicLong now = new AtomicLong();
+    private final SlackCircuitBreaker breaker = new SlackCircuitBreaker(3, 60000, now::get);
+
+    @Test
+    public void opensAfterFailuresInARowAndProbesAfterInterval() throws IOException {
+        failDeliveries(2);
+        record(200);
+        failDeliveries(2);
+        assertEquals(SlackCircuitBreaker.State.CLOSED, breaker.getState(WEBHOOK));
+        failDeliveries(1);
+        assertEquals(SlackCircuitBreaker.State.OPEN, breaker.getState(WEBHOOK));
+        assertRejected();
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(60));
+        breaker.acquire(WEBHOOK);
+        // only one probe at a time
+        assertRejected();
+        breaker.record(WEBHOOK, null);
+        assertEquals(SlackCircuitBreaker.State.OPEN, breaker.getState(WEBHOOK));
+        assertRejected();
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(60));
+        breaker.acquire(WEBHOOK);
+        assertEquals(SlackCircuitBreaker.State.HALF_OPEN, breaker.getState(WEBHOOK));
+        breaker.record(WEBHOOK, new SlackResponse(404, null, "no_service"));
+        assertEquals(SlackCircuitBreaker.State.CLOSED, breaker.getState(WEBHOOK));
+        assertTrue(breaker.getStatuses().isEmpty());
+    }
+
+    @Test
+    public void rejectsWithoutPostingWhileOpen() {
+        AtomicInteger posts = new AtomicInteger();
+        SlackClient client = new SlackClient("http://jenkins/", WEBHOOK, false, (url, json) -> {
+            posts.incrementAndGet();
+            throw new IOException("connect timed out");
+        }, new SlackRateLimiter(1000, 1000), new SlackRetryPolicy(0, 1, 1), breaker);
+
+        for (int i = 0; i < 5; i++) {
+            try {
+                client.postToSlack("{}");
+                fail("delivery should fail");
+            } catch (RuntimeException e) {
+                assertEquals(i >= 3, e.getCause() instanceof SlackCircuitBreaker.OpenException);
+            }
+        }
+        assertEquals(3, posts.get());
+
+        List<SlackCircuitBreaker.Status> statuses = breaker.getStatuses();
+        assertEquals(1, statuses.size());
+        assertEquals(SlackCircuitBreaker.State.OPEN, statuses.get(0).getState());
+        assertEquals(3, statuses.get(0).getFailures());
+        assertEquals(60, statuses.get(0).getProbeInSeconds());
+        assertEquals("hooks.slack.com …XYZ1", statuses.get(0).getTarget());
+    }
+
+    @Test
+    public void countsServerErrorsButNotRateLimits() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            breaker.acquire(WEBHOOK);
+            breaker.record(WEBHOOK, new SlackResponse(429, "1", "rate_limited"));
+        }
+        assertEquals(SlackCircuitBreaker.State.CLOSED, breaker.getState(WEBHOOK));
+        for (int i = 0; i < 3; i++) {
+            breaker.acquire(WEBHOOK);
+            breaker.record(WEBHOOK, new SlackResponse(503, null, "unavailable"));
+        }
+        assertEquals(SlackCircuitBreaker.State.OPEN, breaker.getState(WEBHOOK));
+    }
+
+    @Test
+    public void neverOpensWhenDisabled() throws IOException {
+        breaker.configure(0, 60000);
+        failDeliveries(10);
+        assertEquals(SlackCircuitBreaker.State.CLOSED, breaker.getState(WEBHOOK));
+    }
+
+    private void failDeliveries(int times) throws IOException {
+        for (int i = 0; i < times; i++) {
+            breaker.acquire(WEBHOOK);
+            breaker.record(WEBHOOK, null);
+        }
+    }
+
+    private void record(int status) throws IOException {
+        breaker.acquire(WEBHOOK);
+        breaker.record(WEBHOOK, new SlackResponse(status, null, ""));
+    }
+
+    private void assertRejected() {
+        try {
+            breaker.acquire(WEBHOOK);
+            fail("circuit should be open");
+        } catch (SlackCircuitBreaker.OpenException expected) {
+            assertTrue(expected.getMessage().contains("hooks.slack.com"));
+        }
+    }
+}
@@ -89,6 +89,84 @@ public class SlackClientTest {
         assertTrue(slackMessage.contains("danger"));
     }
 
+    @Test
+    public void retriesRateLimitedAndFailedPosts() throws IOException {
+        try (StubSlackServer slack = new StubSlackServer()) {
+            slack.enqueue(429, 0);
+            slack.enqueue(503, -1);
+            client(slack, new SlackRetryPolicy(3, 10, 50)).postToSlack(successfulResult(), "test-job", 1, null);
+            assertEquals(3, slack.getMessages().size());
+        }
+    }
+
+    @Test
+    public void givesUpAfterMaxRetries() throws IOException {
+        try (StubSlackServer slack = new StubSlackServer()) {
+            slack.setStatus(500);
+            try {
+                client(slack, new SlackRetryPolicy(2, 10, 50)).postToSlack(successfulResult(), "test-job", 1, null);
+                fail("expected the post to fail");
+            } catch (RuntimeException e) {
+                assertTrue(e.getMessage().contains("[500]"));
+            }
+            assertEquals(3, slack.getMessages().size());
+        }
+    }
+
+    @Test
+    public void givesUpWhenRetryAfterExceedsMaxDelay() throws IOException {
+        try (StubSlackServer slack = new StubSlackServer()) {
+            slack.enqueue(429, 60);
+            try {
+                client(slack, new SlackRetryPolicy(3, 10, 50)).postToSlack(successfulResult(), "test-job", 1, null);
+                fail("expected the post to fail");
+            } catch (RuntimeException e) {
+                assertTrue(e.getMessage().contains("[429]"));
+            }
+            assertEquals(1, slack.getMessages().size());
+        }
+    }
+
+    @Test
+    public void doesNotRetryClientErrors() throws IOException {
+        try (StubSlackServer slack = new StubSlackServer()) {
+            slack.enqueue(404, -1);
+            try {
+                client(slack, new SlackRetryPolicy(3, 10, 50)).postToSlack(successfulResult(), "test-job", 1, null);
+                fail("expected the post to fail");
+            } catch (RuntimeException e) {
+                assertEquals(1, slack.getMessages().size());
+            }
+        }
+    }
+
+    @Test
+    public void honoursRetryAfter() {
+        assertEquals(2000, SlackRetryPolicy.parseRetryAfter("2"));
+        assertEquals(-1, SlackRetryPolicy.parseRetryAfter(null));
+        assertEquals(-1, SlackRetryPolicy.parseRetryAfter("soon"));
+        assertEquals(1000, new SlackRetryPolicy(3, 10, 50000).delayMillis(0, new SlackResponse(429, "1", "")));
+        assertEquals(-1, new SlackRetryPolicy(3, 10, 50000).delayMillis(0, new SlackResponse(429, "120", "")));
+        assertTrue(new SlackRetryPolicy(3, 10, 50000).delayMillis(2, new SlackResponse(500, null, "")) <= 40);
+    }
+
+    @Test
+    public void spacesMessagesToTheSameWebhook() throws InterruptedException {
+        SlackRateLimiter limiter = new SlackRateLimiter(20, 1);
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire("https://hooks.slack.com/services/A");
+        }
+        limiter.acquire("https://hooks.slack.com/services/B");
+        assertTrue(System.nanoTime() - start >= 190_000_000L);
+        assertTrue(System.nanoTime() - start < 1_000_000_000L);
+    }
+
+    private SlackClient client(StubSlackServer slack, SlackRetryPolicy retryPolicy) {
+        return new SlackClient("http://jenkins:8080/", slack.getUrl(), false, new PooledHttpTransport(1000, 1000, 2),
+                new SlackRateLimiter(100, 10), retryPolicy);
+    }
+
     private JsonElement loadTestResultFile(String filename) throws FileNotFoundException {
         File result = new File("src/test/resources", filename);
         assertNotNull(result);
@@ -0,0 +1,58 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SlackFanOutTest {
+
+    @Test
+    public void splitsTargetsOnCommasAndWhitespace() {
+        assertEquals(Arrays.asList("http://a/1", "http://b/2", "http://c/3"),
+                SlackFanOut.parseTargets(" http://a/1, http://b/2\n http://c/3 ,http://a/1"));
+        assertEquals(Arrays.asList("http://a/1"), SlackFanOut.parseTargets("http://a/1"));
+        assertTrue(SlackFanOut.parseTargets(null).isEmpty());
+        assertTrue(SlackFanOut.parseTargets(" , ").isEmpty());
+    }
+
+    @Test
+    public void describesWebhookWithoutItsSecret() {
+        assertEquals("hooks.slack.com", SlackFanOut.describe("https://hooks.slack.com/services/T000/B000/XXXX"));
+        assertEquals("webhook", SlackFanOut.describe("not a url"));
+    }
+
+    @Test
+    public void postsToAllWebhooksConcurrently() throws Exception {
+        try (StubSlackServer slow = new StubSlackServer(); StubSlackServer fast = new StubSlackServer();
+             StubSlackServer broken = new StubSlackServer()) {
+            slow.setLatency(500);
+            broken.setStatus(400);
+            List<SlackClient> clients = Arrays.asList(client(slow), client(fast), client(broken));
+
+            long start = System.nanoTime();
+            List<SlackFanOut.Outcome> outcomes = SlackFanOut.send(clients, "{\"text\":\"hi\"}", "test", null);
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertEquals(3, outcomes.size());
+            assertTrue(outcomes.get(0).isDelivered());
+            assertTrue(outcomes.get(1).isDelivered());
+            assertFalse(outcomes.get(2).isDelivered());
+            assertEquals(-1, outcomes.get(2).getNanos());
+            assertTrue("fast webhook waited for the slow one",
+                    outcomes.get(1).getNanos() < outcomes.get(0).getNanos());
+            assertTrue("posted one after the other, took " + elapsed + "ms", elapsed < 1000);
+            assertEquals(1, fast.getMessages().size());
+            assertEquals(1, slow.getMessages().size());
+        }
+    }
+
+    private static SlackClient client(StubSlackServer server) {
+        return new SlackClient("http://jenkins/", server.getUrl(), false,
+                new PooledHttpTransport(5000, 5000, 2),
+                new SlackRateLimiter(100, 10), SlackRetryPolicy.DEFAULT);
+    }
+}
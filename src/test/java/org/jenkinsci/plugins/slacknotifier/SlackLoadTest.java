@@ -0,0 +1,158 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import hudson.FilePath;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import net.sf.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives {@link CucumberSlackService} from many concurrent builds against a local stub webhook that is slow and
+ * occasionally answers 429 or 500, and reports delivery latency, throughput, threads and connections.
+ * <p>
+ * The load is sized with system properties so the same test gives comparable numbers on any machine, e.g.
+ * {@code mvn test -Dtest=SlackLoadTest -Dslack.load.notifications=2000 -Dslack.load.channels=200}.
+ */
+public class SlackLoadTest {
+
+    private static final Logger LOG = Logger.getLogger(SlackLoadTest.class.getName());
+
+    private static final int NOTIFICATIONS = Integer.getInteger("slack.load.notifications", 200);
+    private static final int CHANNELS = Integer.getInteger("slack.load.channels", 50);
+    private static final int BUILDS = Integer.getInteger("slack.load.builds", 16);
+    private static final int LATENCY_MILLIS = Integer.getInteger("slack.load.latency", 20);
+    private static final double TOO_MANY_REQUESTS_RATE = Double.parseDouble(System.getProperty("slack.load.429", "0.02"));
+    private static final double SERVER_ERROR_RATE = Double.parseDouble(System.getProperty("slack.load.5xx", "0.02"));
+
+    private static final Pattern MARKER = Pattern.compile("load-(\\d+) ");
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private StubSlackServer slack;
+
+    @Before
+    public void startSlack() throws Exception {
+        slack = new StubSlackServer();
+        slack.setLatency(LATENCY_MILLIS);
+        slack.setErrorRates(TOO_MANY_REQUESTS_RATE, SERVER_ERROR_RATE, 1, 42);
+    }
+
+    @After
+    public void stopSlack() {
+        slack.close();
+    }
+
+    @Test
+    public void sustainsConcurrentNotifications() throws Exception {
+        CucumberSlack.CucumberSlackDescriptor descriptor = CucumberSlack.get();
+        JSONObject config = new JSONObject();
+        config.put("webHookEndpoint", slack.getUrl());
+        descriptor.configure(null, config);
+
+        FilePath workspace = new FilePath(temporaryFolder.getRoot());
+        Files.copy(new File("src/test/resources/failed-result.json").toPath(), new File(temporaryFolder.getRoot(), "cucumber.json").toPath());
+        List<FreeStyleBuild> builds = new ArrayList<>();
+        for (int i = 0; i < BUILDS; i++) {
+            FreeStyleProject project = j.createFreeStyleProject("load-" + i);
+            builds.add(j.buildAndAssertSuccess(project));
+        }
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        int threadsBefore = threads.getThreadCount();
+        threads.resetPeakThreadCount();
+
+        Map<Integer, Long> submitted = new ConcurrentHashMap<>();
+        long[] latencies = new long[NOTIFICATIONS];
+        CountDownLatch delivered = new CountDownLatch(NOTIFICATIONS);
+        slack.setListener(message -> {
+            Matcher matcher = MARKER.matcher(message);
+            if (matcher.find()) {
+                int id = Integer.parseInt(matcher.group(1));
+                Long start = submitted.get(id);
+                if (start != null && latencies[id] == 0) {
+                    latencies[id] = System.nanoTime() - start;
+                    delivered.countDown();
+                }
+            }
+        });
+
+        // every simulated build posts to its own channel, slack limits each webhook separately
+        CucumberSlackService service = new CucumberSlackService(slack.getUrl());
+        ExecutorService executors = Executors.newFixedThreadPool(BUILDS);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> posts = new ArrayList<>();
+            for (int i = 0; i < NOTIFICATIONS; i++) {
+                final int id = i;
+                final FreeStyleBuild build = builds.get(i % BUILDS);
+                posts.add(executors.submit(() -> {
+                    submitted.put(id, System.nanoTime());
+                    service.sendCucumberReportToSlack(build, workspace, "cucumber.json", slack.getUrl() + "/" + (id % CHANNELS),
+                            "load-" + id + " ", false);
+                }));
+            }
+            for (Future<?> post : posts) {
+                post.get();
+            }
+            assertTrue("only " + (NOTIFICATIONS - delivered.getCount()) + " of " + NOTIFICATIONS + " notifications were delivered",
+                    delivered.await(5, TimeUnit.MINUTES));
+        } finally {
+            executors.shutdownNow();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        double seconds = elapsed / 1e9;
+        LOG.info(String.format("slack load: %d notifications to %d channels from %d builds in %.2fs, %.1f msg/s, "
+                        + "latency p50 %dms p99 %dms, %d requests, %d connections, threads %d -> peak %d",
+                NOTIFICATIONS, CHANNELS, BUILDS, seconds, NOTIFICATIONS / seconds,
+                TimeUnit.NANOSECONDS.toMillis(percentile(latencies, 50)), TimeUnit.NANOSECONDS.toMillis(percentile(latencies, 99)),
+                slack.getMessages().size(), slack.getConnectionCount(), threadsBefore, threads.getPeakThreadCount()));
+
+        // the outbox is acknowledged after the response has been read, a little after slack has seen the message
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (NotificationOutbox.get().getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        assertEquals(0, NotificationOutbox.get().getPendingCount());
+        // connections are pooled, not opened per notification
+        assertTrue(slack.getConnectionCount() + " connections", slack.getConnectionCount() <= descriptor.getMaxConnectionsPerHost());
+        // delivery runs on the dispatcher workers, not on a thread per notification; the stub serves each
+        // connection on its own thread and a few Jenkins timers may start meanwhile
+        assertTrue(threads.getPeakThreadCount() + " threads", threads.getPeakThreadCount() - threadsBefore
+                <= BUILDS + descriptor.getDispatcherWorkers() + descriptor.getMaxConnectionsPerHost() + 10);
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile / 100.0 * sorted.length) - 1)];
+    }
+}
@@ -0,0 +1,81 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SlackNotificationDispatcherTest {
+
+    private final SlackNotificationDispatcher dispatcher = new SlackNotificationDispatcher();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void releaseWorkers() {
+        release.countDown();
+    }
+
+    @Test
+    public void deliversInTheBackground() throws InterruptedException {
+        CountDownLatch delivered = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            dispatcher.dispatch("message " + i, delivered::countDown);
+        }
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void dropsWhenFull() throws InterruptedException {
+        dispatcher.configure(1, 1, SlackNotificationDispatcher.OverflowPolicy.DROP);
+        CountDownLatch started = new CountDownLatch(1);
+        dispatcher.dispatch("blocking", () -> {
+            started.countDown();
+            awaitRelease();
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        dispatcher.dispatch("queued", () -> { });
+        dispatcher.dispatch("dropped", () -> { });
+        assertEquals(1, dispatcher.getQueueDepth());
+        assertEquals(1, dispatcher.getDroppedCount());
+    }
+
+    @Test
+    public void blocksWhenFull() throws InterruptedException {
+        dispatcher.configure(1, 1, SlackNotificationDispatcher.OverflowPolicy.BLOCK);
+        AtomicInteger delivered = new AtomicInteger();
+        dispatcher.dispatch("blocking", this::awaitRelease);
+        dispatcher.dispatch("queued", delivered::incrementAndGet);
+
+        Thread producer = new Thread(() -> dispatcher.dispatch("waiting", delivered::incrementAndGet));
+        producer.start();
+        producer.join(200);
+        assertTrue("producer should wait for room in the queue", producer.isAlive());
+
+        release.countDown();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        assertEquals(0, dispatcher.getDroppedCount());
+    }
+
+    @Test
+    public void survivesFailingDelivery() throws InterruptedException {
+        CountDownLatch delivered = new CountDownLatch(1);
+        dispatcher.dispatch("failing", () -> {
+            throw new RuntimeException("Received HTTP Status code [500] while posting to slack");
+        });
+        dispatcher.dispatch("next", delivered::countDown);
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class SlackTransportTest {
+
+    private StubSlackServer slack;
+
+    @Before
+    public void startSlack() throws IOException {
+        slack = new StubSlackServer();
+    }
+
+    @After
+    public void stopSlack() {
+        slack.close();
+    }
+
+    @Test
+    public void pooledTransportReusesConnections() throws IOException {
+        PooledHttpTransport transport = new PooledHttpTransport(1000, 1000, 2);
+        try {
+            for (int i = 0; i < 5; i++) {
+                SlackResponse response = transport.post(slack.getUrl(), "{\"text\":\"" + i + "\"}");
+                assertEquals(200, response.getStatus());
+            }
+            assertEquals(5, slack.getMessages().size());
+            assertEquals("{\"text\":\"4\"}", slack.getMessages().get(4));
+            assertEquals(1, slack.getConnectionCount());
+        } finally {
+            transport.shutdown();
+        }
+    }
+
+    @Test
+    public void pooledTransportStreamsPayloadIntoRequest() throws IOException {
+        CucumberResult result = new CucumberResult(Collections.singletonList(new FeatureResult("a.feature", "Caf\u00e9", 50)), 2, 50);
+        PooledHttpTransport transport = new PooledHttpTransport(1000, 1000, 2);
+        try {
+            SlackResponse response = transport.post(slack.getUrl(),
+                    writer -> result.writeSlackMessage(writer, "test-job", 1, "http://jenkins:8080/", null, null));
+            assertEquals(200, response.getStatus());
+            assertEquals(result.toSlackMessage("test-job", 1, "http://jenkins:8080/", null), slack.getMessages().get(0));
+        } finally {
+            transport.shutdown();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void pooledTransportTimesOutOnStalledEndpoint() throws IOException {
+        slack.setLatency(2000);
+        PooledHttpTransport transport = new PooledHttpTransport(1000, 200, 2);
+        try {
+            transport.post(slack.getUrl(), "{}");
+        } finally {
+            transport.shutdown();
+        }
+    }
+
+    @Test
+    public void pooledTransportReportsErrorStatus() throws IOException {
+        slack.setStatus(500);
+        PooledHttpTransport transport = new PooledHttpTransport(1000, 1000, 2);
+        try {
+            assertFalse(transport.post(slack.getUrl(), "{}").isOk());
+        } finally {
+            transport.shutdown();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.*;
+
+public class SlackWebApiClientTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void stopScheduler() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void postsOnceThenUpdatesInPlace() throws Exception {
+        try (StubSlackServer slack = new StubSlackServer()) {
+            SlackMessageAction action = new SlackMessageAction("#builds");
+            assertEquals(SlackMessageAction.Outcome.POSTED, action.publish(client(slack), message("first"), 0, scheduler));
+            assertEquals(SlackMessageAction.Outcome.UPDATED, action.publish(client(slack), message("second"), 0, scheduler));
+
+            assertEquals(Arrays.asList("chat.postMessage", "chat.update"), slack.getApiCalls());
+            assertEquals("1700000000.000100", action.getTs());
+            JsonObject posted = JsonParser.parseString(slack.getMessages().get(0)).getAsJsonObject();
+            assertEquals("#builds", posted.get("channel").getAsString());
+            assertFalse(posted.has("ts"));
+            JsonObject updated = JsonParser.parseString(slack.getMessages().get(1)).getAsJsonObject();
+            // updates address the message by channel id and timestamp
+            assertEquals("C0000", updated.get("channel").getAsString());
+            assertEquals("1700000000.000100", updated.get("ts").getAsString());
+            assertEquals("second", updated.get("text").getAsString());
+        }
+    }
+
+    @Test
+    public void throttlesUpdatesAndSendsTheLatest() throws Exception {
+        try (StubSlackServer slack = new StubSlackServer()) {
+            SlackMessageAction action = new SlackMessageAction("C0000");
+            SlackWebApiClient client = client(slack);
+            assertEquals(SlackMessageAction.Outcome.POSTED, action.publish(client, message("stage 1"), 300, scheduler));
+            assertEquals(SlackMessageAction.Outcome.DEFERRED, action.publish(client, message("stage 2"), 300, scheduler));
+            assertEquals(SlackMessageAction.Outcome.DEFERRED, action.publish(client, message("stage 3"), 300, scheduler));
+            assertEquals(1, slack.getApiCalls().size());
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (slack.getApiCalls().size() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            Thread.sleep(400);
+            assertEquals(Arrays.asList("chat.postMessage", "chat.update"), slack.getApiCalls());
+            assertEquals("stage 3", JsonParser.parseString(slack.getMessages().get(1)).getAsJsonObject().get("text").getAsString());
+        }
+    }
+
+    @Test
+    public void reportsApiErrors() throws Exception {
+        try (StubSlackServer slack = new StubSlackServer()) {
+            slack.setToken("xoxb-other");
+            try {
+                client(slack).postMessage("#builds", message("hello"));
+                fail("expected the call to be rejected");
+            } catch (RuntimeException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("invalid_auth"));
+            }
+        }
+    }
+
+    @Test
+    public void tellsChannelsFromWebhooks() {
+        assertTrue(SlackWebApiClient.isChannel("#builds"));
+        assertTrue(SlackWebApiClient.isChannel("C0123ABCD"));
+        assertFalse(SlackWebApiClient.isChannel("https://hooks.slack.com/services/T000/B000/XXXX"));
+    }
+
+    private static SlackWebApiClient client(StubSlackServer slack) {
+        return new SlackWebApiClient(slack.getApiUrl(), "xoxb-test", new PooledHttpTransport(5000, 5000, 2),
+                new SlackRateLimiter(100, 10), SlackRetryPolicy.DEFAULT);
+    }
+
+    private static String message(String text) {
+        return "{\"channel\":\"#\",\"text\":\"" + text + "\",\"username\":\"job\"}";
+    }
+}
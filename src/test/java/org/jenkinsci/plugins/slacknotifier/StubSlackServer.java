@@ -0,0 +1,198 @@
+package org.jenkinsci.plugins.slacknotifier;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Local stand-in for a slack incoming webhook, and for the {@code chat.postMessage} and {@code chat.update} methods
+ * of the Web API under {@code /api/}.
+ */
+class StubSlackServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final List<String> messages = new CopyOnWriteArrayList<>();
+    private final List<String> apiCalls = new CopyOnWriteArrayList<>();
+    private volatile String token = "xoxb-test";
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private final Queue<int[]> scripted = new ConcurrentLinkedQueue<>();
+    private volatile int status = 200;
+    private volatile long latencyMillis;
+    private volatile double tooManyRequestsRate;
+    private volatile double serverErrorRate;
+    private volatile int retryAfterSeconds;
+    private volatile Random random = new Random(42);
+    private volatile Consumer<String> listener = message -> { };
+
+    StubSlackServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    String getUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/services/T000/B000/XXXX";
+    }
+
+    String getApiUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/api/";
+    }
+
+    /**
+     * @return the Web API methods called, in order
+     */
+    List<String> getApiCalls() {
+        return apiCalls;
+    }
+
+    void setToken(String token) {
+        this.token = token;
+    }
+
+    void setStatus(int status) {
+        this.status = status;
+    }
+
+    void setLatency(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Answers a share of requests with 429 (and a Retry-After header) or 500, chosen by a seeded random so runs are
+     * reproducible.
+     */
+    void setErrorRates(double tooManyRequestsRate, double serverErrorRate, int retryAfterSeconds, long seed) {
+        this.tooManyRequestsRate = tooManyRequestsRate;
+        this.serverErrorRate = serverErrorRate;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Called with every message that is accepted, on the server thread that accepted it.
+     */
+    void setListener(Consumer<String> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Answers the next request with the given status, and a Retry-After header if retryAfterSeconds is not negative.
+     */
+    void enqueue(int status, int retryAfterSeconds) {
+        scripted.add(new int[]{status, retryAfterSeconds});
+    }
+
+    List<String> getMessages() {
+        return messages;
+    }
+
+    /**
+     * @return number of distinct client connections seen, as identified by their source port
+     */
+    int getConnectionCount() {
+        return clientPorts.size();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        String message = read(exchange.getRequestBody());
+        messages.add(message);
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        int[] next = scripted.poll();
+        if (next == null) {
+            next = randomStatus();
+        }
+        int responseStatus = next == null ? status : next[0];
+        if (next != null && next[1] >= 0) {
+            exchange.getResponseHeaders().add("Retry-After", Integer.toString(next[1]));
+        }
+        final String path = exchange.getRequestURI().getPath();
+        if (responseStatus == 200 && path.startsWith("/api/")) {
+            respond(exchange, 200, apiResponse(path.substring("/api/".length()), exchange.getRequestHeaders().getFirst("Authorization")));
+        } else {
+            respond(exchange, responseStatus, responseStatus == 200 ? "ok" : "error");
+        }
+        // only once the client can have seen the answer
+        if (responseStatus == 200) {
+            listener.accept(message);
+        }
+    }
+
+    private String apiResponse(String method, String authorization) {
+        if (!("Bearer " + token).equals(authorization)) {
+            return "{\"ok\":false,\"error\":\"invalid_auth\"}";
+        }
+        apiCalls.add(method);
+        if (method.equals("chat.postMessage")) {
+            return "{\"ok\":true,\"channel\":\"C0000\",\"ts\":\"1700000000.000100\"}";
+        }
+        if (method.equals("chat.update")) {
+            return "{\"ok\":true,\"channel\":\"C0000\",\"ts\":\"1700000000.000100\"}";
+        }
+        return "{\"ok\":false,\"error\":\"unknown_method\"}";
+    }
+
+    private int[] randomStatus() {
+        if (tooManyRequestsRate <= 0 && serverErrorRate <= 0) {
+            return null;
+        }
+        double roll;
+        synchronized (this) {
+            roll = random.nextDouble();
+        }
+        if (roll < tooManyRequestsRate) {
+            return new int[]{429, retryAfterSeconds};
+        }
+        if (roll < tooManyRequestsRate + serverErrorRate) {
+            return new int[]{500, -1};
+        }
+        return null;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        ((java.util.concurrent.ExecutorService) server.getExecutor()).shutdownNow();
+    }
+}